@@ -0,0 +1,83 @@
+package ch.arktos.dcc.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ch.arktos.dcc.AttachmentIndex;
+import ch.arktos.dcc.LibraryFile;
+import ch.arktos.dcc.LibraryRegexFilter;
+import ch.arktos.dcc.LibraryScan;
+
+
+/**
+ * Measures indexing the source attachments of a scan and looking up the attachment of every library, which replaces
+ * searching the attachment directories once per library.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class AttachmentLookupBenchmark {
+
+  private final List<LibraryFile> libraries = new ArrayList<LibraryFile>();
+  private LibraryScan             scan;
+  private AttachmentIndex         index;
+
+  /**
+   * Scans the library directory and indexes its attachments once for all invocations.
+   * 
+   * @param tree
+   *          the library directory
+   */
+  @Setup
+  public void scan(LibraryTree tree) {
+    scan = tree.scan();
+    index = new AttachmentIndex(scan, LibraryTree.SRC_REGEX);
+    final LibraryRegexFilter filter = new LibraryRegexFilter(LibraryTree.LIB_REGEX);
+    for (LibraryFile dir : scan.getDirectories()) {
+      for (LibraryFile file : scan.getEntries(dir.getFile())) {
+        if (filter.accept(file)) {
+          libraries.add(file);
+        }
+      }
+    }
+  }
+
+  /**
+   * Indexes the source attachments of the scan.
+   * 
+   * @return the index
+   */
+  @Benchmark
+  public AttachmentIndex index() {
+    return new AttachmentIndex(scan, LibraryTree.SRC_REGEX);
+  }
+
+  /**
+   * Looks up the source attachment of every library.
+   * 
+   * @param blackhole
+   *          consumes the attachments
+   */
+  @Benchmark
+  public void lookup(Blackhole blackhole) {
+    for (LibraryFile library : libraries) {
+      blackhole.consume(index.get(library));
+    }
+  }
+}
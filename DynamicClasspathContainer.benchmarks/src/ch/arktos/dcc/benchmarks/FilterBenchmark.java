@@ -0,0 +1,84 @@
+package ch.arktos.dcc.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.arktos.dcc.AttachmentRegexFilter;
+import ch.arktos.dcc.LibraryFile;
+import ch.arktos.dcc.LibraryRegexFilter;
+import ch.arktos.dcc.LibraryScan;
+
+
+/**
+ * Measures selecting the libraries and the attachments among the scanned files with the default expressions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class FilterBenchmark {
+
+  private final LibraryRegexFilter    libraryFilter    = new LibraryRegexFilter(LibraryTree.LIB_REGEX);
+  private final AttachmentRegexFilter attachmentFilter = new AttachmentRegexFilter(LibraryTree.SRC_REGEX);
+  private final List<LibraryFile>     files            = new ArrayList<LibraryFile>();
+
+  /**
+   * Scans the library directory once for all invocations.
+   * 
+   * @param tree
+   *          the library directory
+   */
+  @Setup
+  public void scan(LibraryTree tree) {
+    final LibraryScan scan = tree.scan();
+    for (LibraryFile dir : scan.getDirectories()) {
+      files.addAll(scan.getEntries(dir.getFile()));
+    }
+  }
+
+  /**
+   * Applies the library filter to all scanned files.
+   * 
+   * @return the number of libraries
+   */
+  @Benchmark
+  public int libraryFilter() {
+    int accepted = 0;
+    for (LibraryFile file : files) {
+      if (libraryFilter.accept(file)) {
+        accepted++;
+      }
+    }
+    return accepted;
+  }
+
+  /**
+   * Applies the source attachment filter to all scanned files.
+   * 
+   * @return the number of source attachments
+   */
+  @Benchmark
+  public int attachmentFilter() {
+    int accepted = 0;
+    for (LibraryFile file : files) {
+      if (attachmentFilter.accept(file)) {
+        accepted++;
+      }
+    }
+    return accepted;
+  }
+}
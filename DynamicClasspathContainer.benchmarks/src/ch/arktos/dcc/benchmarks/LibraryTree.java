@@ -0,0 +1,176 @@
+package ch.arktos.dcc.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import ch.arktos.dcc.LibraryScan;
+
+
+/**
+ * A synthetic library directory generated for a benchmark run. The libraries are either all in the library directory
+ * or spread over vendor and product subdirectories like <code>lib/&lt;vendor&gt;/&lt;product&gt;/*.jar</code>, which
+ * are collected by a recursive container. Source and javadoc attachments are generated next to the libraries on
+ * request, in the <code>src</code> and <code>doc</code> subdirectories of a flat library directory.
+ * <p>
+ * The archives only consist of the end of central directory record, which is enough to pass the archive validation
+ * and keeps generating 10,000 of them cheap.
+ */
+@State(Scope.Benchmark)
+public class LibraryTree {
+
+  /** The library expression offered by default for new containers. */
+  public static final String  LIB_REGEX = "(?!.*(-javadoc|-doc|-sources|-src).*).*\\.jar";
+
+  /** The source attachment expression offered by default for new containers. */
+  public static final String  SRC_REGEX = ".*(-sources|-src)\\.(jar|zip)";
+
+  /** The javadoc attachment expression offered by default for new containers. */
+  public static final String  DOC_REGEX = ".*(-javadoc|-doc)\\.(jar|zip)";
+
+  private static final int    VENDORS   = 10;
+  private static final int    PRODUCTS  = 10;
+  private static final int    MAX_DEPTH = 2;
+  private static final byte[] EMPTY_ZIP = {'P', 'K', 5, 6, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0};
+
+  /** The number of libraries. */
+  @Param({"100", "1000", "10000"})
+  public int                  libraries;
+
+  /** Whether the libraries are spread over vendor and product subdirectories. */
+  @Param({"false", "true"})
+  public boolean              subfolders;
+
+  /** Whether every library has a source and a javadoc attachment. */
+  @Param({"false", "true"})
+  public boolean              attachments;
+
+  private File                root;
+
+  /**
+   * Generates the library directory.
+   * 
+   * @throws IOException
+   *           if a file cannot be written
+   */
+  @Setup(Level.Trial)
+  public void generate() throws IOException {
+    root = Files.createTempDirectory("dcc-benchmark").toFile();
+    final File libDir = getLibraryDirectory();
+    for (int i = 0; i < libraries; i++) {
+      final File dir = subfolders ? new File(libDir, "vendor-" + i % VENDORS + File.separator + "product-" + i / VENDORS % PRODUCTS) : libDir;
+      write(new File(dir, "library-" + i + ".jar"));
+      if (attachments) {
+        write(new File(subfolders ? dir : new File(libDir, "src"), "library-" + i + "-sources.jar"));
+        write(new File(subfolders ? dir : new File(libDir, "doc"), "library-" + i + "-javadoc.jar"));
+      }
+    }
+  }
+
+  /**
+   * Deletes the library directory.
+   * 
+   * @throws IOException
+   *           if a file cannot be deleted
+   */
+  @TearDown(Level.Trial)
+  public void delete() throws IOException {
+    delete(root);
+  }
+
+  /**
+   * Returns the generated library directory.
+   * 
+   * @return the library directory
+   */
+  public File getLibraryDirectory() {
+    return new File(root, "lib");
+  }
+
+  /**
+   * Returns the library directories as passed to a scan.
+   * 
+   * @return the library directory
+   */
+  public List<File> getRoots() {
+    return Collections.singletonList(getLibraryDirectory());
+  }
+
+  /**
+   * Checks whether the libraries are collected from the subdirectories as well.
+   * 
+   * @return true, if the libraries are spread over subdirectories
+   */
+  public boolean isRecursive() {
+    return subfolders;
+  }
+
+  /**
+   * Returns the depth a container collecting the library directory scans.
+   * 
+   * @return the depth of the product subdirectories or {@link LibraryScan#DEFAULT_DEPTH}
+   */
+  public int getScanDepth() {
+    return subfolders ? MAX_DEPTH : LibraryScan.DEFAULT_DEPTH;
+  }
+
+  /**
+   * Scans the library directory like a container does.
+   * 
+   * @return the scan
+   */
+  public LibraryScan scan() {
+    return LibraryScan.scan(getRoots(), getScanDepth(), "", null);
+  }
+
+  private static void write(File file) throws IOException {
+    file.getParentFile().mkdirs();
+    try (OutputStream out = new FileOutputStream(file)) {
+      out.write(EMPTY_ZIP);
+    }
+  }
+
+  /**
+   * Deletes a directory with everything in it.
+   * 
+   * @param dir
+   *          the directory
+   * @throws IOException
+   *           if a file cannot be deleted
+   */
+  public static void delete(File dir) throws IOException {
+    if (dir == null || !dir.exists()) {
+      return;
+    }
+
+    Files.walkFileTree(dir.toPath(), new SimpleFileVisitor<Path>() {
+
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+        Files.delete(file);
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult postVisitDirectory(Path directory, IOException e) throws IOException {
+        Files.delete(directory);
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+}
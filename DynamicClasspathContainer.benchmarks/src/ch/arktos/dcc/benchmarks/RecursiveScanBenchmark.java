@@ -0,0 +1,124 @@
+package ch.arktos.dcc.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.arktos.dcc.LibraryFile;
+import ch.arktos.dcc.LibraryScan;
+
+
+/**
+ * Compares the parallel scan of a recursive container with a sequential walk reading the same attributes, on a
+ * vendor drop of 50,000 files organized as <code>lib/&lt;vendor&gt;/&lt;product&gt;/*.jar</code>. The speedup of the
+ * parallel scan is the ratio of the two scores, and depends on the number of processors and the file system.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class RecursiveScanBenchmark {
+
+  private static final int VENDORS  = 20;
+  private static final int PRODUCTS = 25;
+  private static final int JARS     = 100;
+  private static final int DEPTH    = 2;
+
+  private File             root;
+
+  /**
+   * Generates the vendor drop.
+   * 
+   * @throws IOException
+   *           if a file cannot be written
+   */
+  @Setup(Level.Trial)
+  public void generate() throws IOException {
+    root = Files.createTempDirectory("dcc-benchmark").toFile();
+    for (int vendor = 0; vendor < VENDORS; vendor++) {
+      for (int product = 0; product < PRODUCTS; product++) {
+        final File dir = new File(root, "vendor-" + vendor + File.separator + "product-" + product);
+        dir.mkdirs();
+        for (int jar = 0; jar < JARS; jar++) {
+          try (OutputStream out = new FileOutputStream(new File(dir, "library-" + jar + ".jar"))) {
+            out.write(0);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Deletes the vendor drop.
+   * 
+   * @throws IOException
+   *           if a file cannot be deleted
+   */
+  @TearDown(Level.Trial)
+  public void delete() throws IOException {
+    LibraryTree.delete(root);
+  }
+
+  /**
+   * Scans the vendor drop on the fork/join pool of the recursive containers.
+   * 
+   * @return the scan
+   */
+  @Benchmark
+  public LibraryScan parallel() {
+    return LibraryScan.scan(root, DEPTH, "", null);
+  }
+
+  /**
+   * Walks the vendor drop on the calling thread, reading the attributes of every entry like the scan.
+   * 
+   * @return the entries
+   * @throws IOException
+   *           if the walk fails
+   */
+  @Benchmark
+  public List<LibraryFile> sequential() throws IOException {
+    final List<LibraryFile> entries = new ArrayList<LibraryFile>();
+    Files.walkFileTree(root.toPath(), EnumSet.of(FileVisitOption.FOLLOW_LINKS), DEPTH + 1, new SimpleFileVisitor<Path>() {
+
+      @Override
+      public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+        entries.add(new LibraryFile(dir.toFile(), attrs));
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+        entries.add(new LibraryFile(file.toFile(), attrs));
+        return FileVisitResult.CONTINUE;
+      }
+    });
+    return entries;
+  }
+}
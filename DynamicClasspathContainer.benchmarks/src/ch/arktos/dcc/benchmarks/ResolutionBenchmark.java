@@ -0,0 +1,70 @@
+package ch.arktos.dcc.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.arktos.dcc.LibraryResolver;
+import ch.arktos.dcc.LibraryScan;
+import ch.arktos.dcc.ResolvedLibrary;
+
+
+/**
+ * Measures the whole resolution of a container up to the resolved libraries, i.e. everything but creating the
+ * classpath entries, which needs the Eclipse runtime.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ResolutionBenchmark {
+
+  private LibraryResolver resolver;
+  private LibraryScan     scan;
+
+  /**
+   * Creates the resolver with the default expressions and scans the library directory once.
+   * 
+   * @param tree
+   *          the library directory
+   */
+  @Setup
+  public void scan(LibraryTree tree) {
+    resolver = new LibraryResolver(LibraryTree.LIB_REGEX, LibraryTree.SRC_REGEX, LibraryTree.DOC_REGEX, tree.isRecursive());
+    scan = tree.scan();
+  }
+
+  /**
+   * Scans the library directory and resolves the libraries with their attachments.
+   * 
+   * @param tree
+   *          the library directory
+   * @return the libraries
+   */
+  @Benchmark
+  public List<ResolvedLibrary> resolve(LibraryTree tree) {
+    return resolver.resolve(tree.scan());
+  }
+
+  /**
+   * Resolves the libraries of an existing scan, e.g. a restored one.
+   * 
+   * @return the libraries
+   */
+  @Benchmark
+  public List<ResolvedLibrary> resolveScan() {
+    return resolver.resolve(scan);
+  }
+}
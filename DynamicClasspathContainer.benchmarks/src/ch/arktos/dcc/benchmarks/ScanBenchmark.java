@@ -0,0 +1,50 @@
+package ch.arktos.dcc.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.arktos.dcc.DirectoryFingerprint;
+import ch.arktos.dcc.LibraryScan;
+
+
+/**
+ * Measures listing the library directory and checking whether a scan is still current.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ScanBenchmark {
+
+  /**
+   * Scans the library directory like a container resolving its entries.
+   * 
+   * @param tree
+   *          the library directory
+   * @return the scan
+   */
+  @Benchmark
+  public LibraryScan scan(LibraryTree tree) {
+    return tree.scan();
+  }
+
+  /**
+   * Scans the library directory and checks the fingerprint of the scan, like a container answering from its cache.
+   * 
+   * @param tree
+   *          the library directory
+   * @return true, if the scan is current
+   */
+  @Benchmark
+  public boolean fingerprint(LibraryTree tree) {
+    return DirectoryFingerprint.of(tree.scan()).isCurrent();
+  }
+}
@@ -0,0 +1,101 @@
+package ch.arktos.dcc.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.arktos.dcc.DirectoryFingerprint;
+import ch.arktos.dcc.LibraryResolver;
+import ch.arktos.dcc.LibraryScan;
+import ch.arktos.dcc.ResolvedLibrary;
+import ch.arktos.dcc.SnapshotStore;
+
+
+/**
+ * Compares the two ways a container gets its libraries at startup: resolving them from a new scan of the library
+ * directory, or restoring the scan persisted by the last session, checking its fingerprint and resolving them from it.
+ * Both resolve the same libraries, so the difference of the scores is the time saved by the {@link SnapshotStore}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class StartupBenchmark {
+
+  private static final String KEY = "project|container";
+
+  private LibraryResolver     resolver;
+  private File                storeDir;
+  private SnapshotStore       store;
+
+  /**
+   * Creates the resolver with the default expressions and persists a scan of the library directory.
+   * 
+   * @param tree
+   *          the library directory
+   * @throws IOException
+   *           if the scan cannot be persisted
+   */
+  @Setup(Level.Trial)
+  public void persist(LibraryTree tree) throws IOException {
+    resolver = new LibraryResolver(LibraryTree.LIB_REGEX, LibraryTree.SRC_REGEX, LibraryTree.DOC_REGEX, tree.isRecursive());
+    storeDir = Files.createTempDirectory("dcc-snapshots").toFile();
+    store = new SnapshotStore(storeDir);
+    store.save(KEY, tree.scan());
+  }
+
+  /**
+   * Deletes the persisted scan.
+   * 
+   * @throws IOException
+   *           if a file cannot be deleted
+   */
+  @TearDown(Level.Trial)
+  public void delete() throws IOException {
+    LibraryTree.delete(storeDir);
+  }
+
+  /**
+   * Scans the library directory and resolves the libraries, like a container without persisted scan.
+   * 
+   * @param tree
+   *          the library directory
+   * @return the libraries
+   */
+  @Benchmark
+  public List<ResolvedLibrary> cold(LibraryTree tree) {
+    return resolver.resolve(tree.scan());
+  }
+
+  /**
+   * Loads the persisted scan, checks that the library directory did not change since and resolves the libraries from
+   * it, like a restored container.
+   * 
+   * @return the libraries
+   */
+  @Benchmark
+  public List<ResolvedLibrary> restore() {
+    final LibraryScan scan = store.load(KEY);
+    if (scan == null || !DirectoryFingerprint.of(scan).isCurrent()) {
+      throw new IllegalStateException("The persisted scan is not current");
+    }
+    return resolver.resolve(scan);
+  }
+}
@@ -0,0 +1,91 @@
+package ch.arktos.dcc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Tests that truncated archives are quarantined by the {@link ArchiveValidator} and that completing them in place,
+ * which does not touch their directory, outdates the {@link DirectoryFingerprint} of the resolution.
+ */
+public class ArchiveValidatorTest {
+
+  private TestDirectory dir;
+
+  @Before
+  public void setUp() throws IOException {
+    dir = new TestDirectory();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    dir.delete();
+  }
+
+  @Test
+  public void testTruncatedArchiveIsQuarantined() throws IOException {
+    final File jar = dir.jar("lib/a.jar");
+    truncate(jar);
+    final LibraryScan scan = LibraryScan.scan(new File(dir.getRoot(), "lib"));
+
+    assertFalse(ArchiveValidator.isValid(scan.getEntries(scan.getRoot()).get(0)));
+    assertEquals(Collections.singletonList(LibraryFile.read(jar)), ArchiveValidator.getQuarantined(scan));
+  }
+
+  @Test
+  public void testCompletedArchiveOutdatesFingerprint() throws IOException {
+    final File jar = dir.jar("lib/a.jar");
+    final byte[] content = Files.readAllBytes(jar.toPath());
+    truncate(jar);
+    final LibraryScan scan = LibraryScan.scan(new File(dir.getRoot(), "lib"));
+    assertTrue(new LibraryResolver(".*\\.jar", "", "").resolve(scan).isEmpty());
+    final DirectoryFingerprint fingerprint = DirectoryFingerprint.of(scan).withArchives(ArchiveValidator.getQuarantined(scan));
+    assertTrue(fingerprint.isCurrent());
+
+    dir.file("lib/a.jar", content);
+    assertTrue(DirectoryFingerprint.of(scan).isCurrent());
+    assertFalse(fingerprint.isCurrent());
+  }
+
+  @Test
+  public void testArchiveChangedSinceScanIsValidatedAgain() throws IOException {
+    final File jar = dir.jar("lib/a.jar");
+    final byte[] content = Files.readAllBytes(jar.toPath());
+    truncate(jar);
+    final LibraryScan scan = LibraryScan.scan(new File(dir.getRoot(), "lib"));
+
+    // e.g. a persisted scan restored after the copy completed
+    dir.file("lib/a.jar", content);
+    assertEquals(jar, new LibraryResolver(".*\\.jar", "", "").resolve(scan).get(0).getLibrary().getFile());
+    assertTrue(ArchiveValidator.getQuarantined(scan).isEmpty());
+  }
+
+  @Test
+  public void testDeletedArchiveIsReleased() throws IOException {
+    final File jar = dir.jar("lib/a.jar");
+    truncate(jar);
+    final File lib = new File(dir.getRoot(), "lib");
+    assertTrue(new LibraryResolver(".*\\.jar", "", "").resolve(LibraryScan.scan(lib)).isEmpty());
+
+    Files.delete(jar.toPath());
+    final LibraryScan scan = LibraryScan.scan(lib);
+    assertTrue(ArchiveValidator.getQuarantined(scan).isEmpty());
+    assertTrue(DirectoryFingerprint.of(scan).withArchives(ArchiveValidator.getQuarantined(scan)).isCurrent());
+  }
+
+  private void truncate(File jar) throws IOException {
+    final byte[] content = Files.readAllBytes(jar.toPath());
+    dir.file(dir.getRoot().toPath().relativize(jar.toPath()).toString(), Arrays.copyOf(content, content.length / 2));
+  }
+}
@@ -0,0 +1,122 @@
+package ch.arktos.dcc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.core.runtime.Path;
+import org.eclipse.jdt.core.IAccessRule;
+import org.eclipse.jdt.core.IClasspathAttribute;
+import org.eclipse.jdt.core.IClasspathEntry;
+import org.eclipse.jdt.core.JavaCore;
+import org.junit.Test;
+
+
+/**
+ * Tests that the classpath entries created by the {@link EntryInterner} for the equal libraries of different scans
+ * share their paths and javadoc attributes, and reports the bytes allocated per library for the entries of two scans
+ * with and without interning. Unlike the other tests, it needs <code>org.eclipse.jdt.core</code> on the classpath.
+ */
+public class EntryInternerTest {
+
+  private static final int    LIBRARIES = 10000;
+  private static final String JAVADOC   = "javadoc_location";
+
+  @Test
+  public void testEntriesOfDifferentScansShareTheirParts() {
+    final File libDir = getLibraryDirectory("shared");
+    final List<IClasspathEntry> first = createEntries(resolve(libDir));
+    final List<IClasspathEntry> second = createEntries(resolve(libDir));
+
+    for (int i = 0; i < LIBRARIES; i++) {
+      assertNotSame(first.get(i), second.get(i));
+      assertSame(first.get(i).getPath(), second.get(i).getPath());
+      assertSame(first.get(i).getSourceAttachmentPath(), second.get(i).getSourceAttachmentPath());
+      assertEquals(1, second.get(i).getExtraAttributes().length);
+      assertSame(first.get(i).getExtraAttributes()[0], second.get(i).getExtraAttributes()[0]);
+    }
+  }
+
+  @Test
+  public void testEntryFootprint() {
+    // warms up both ways of creating the entries on other files
+    createEntries(resolve(getLibraryDirectory("warmup")));
+    createUnsharedEntries(resolve(getLibraryDirectory("warmup")));
+
+    final File libDir = getLibraryDirectory("footprint");
+    final List<ResolvedLibrary> firstScan = resolve(libDir);
+    final List<ResolvedLibrary> secondScan = resolve(libDir);
+
+    long allocated = getAllocatedBytes();
+    final List<IClasspathEntry> unshared = createUnsharedEntries(firstScan);
+    unshared.addAll(createUnsharedEntries(secondScan));
+    final long unsharedBytes = (getAllocatedBytes() - allocated) / LIBRARIES;
+
+    allocated = getAllocatedBytes();
+    final List<IClasspathEntry> shared = createEntries(firstScan);
+    shared.addAll(createEntries(secondScan));
+    final long sharedBytes = (getAllocatedBytes() - allocated) / LIBRARIES;
+
+    System.out.println("Bytes allocated per library for the entries of two scans: " + unsharedBytes + " without interning, " + sharedBytes
+        + " with interning");
+    assertNotSame(unshared.get(0).getPath(), unshared.get(LIBRARIES).getPath());
+    assertSame(shared.get(0).getPath(), shared.get(LIBRARIES).getPath());
+  }
+
+  private static File getLibraryDirectory(String name) {
+    return new File(System.getProperty("java.io.tmpdir"), "dcc-" + name + "/lib");
+  }
+
+  /**
+   * Returns the libraries of a scan with their attachments, the files are equal to but not the same as those of other
+   * scans.
+   */
+  private static List<ResolvedLibrary> resolve(File libDir) {
+    final List<ResolvedLibrary> libraries = new ArrayList<ResolvedLibrary>(LIBRARIES);
+    for (int i = 0; i < LIBRARIES; i++) {
+      final File dir = new File(libDir, "vendor-" + i % 10);
+      libraries.add(new ResolvedLibrary(new LibraryFile(new File(dir, "library-" + i + ".jar"), false, 1024, 0), new LibraryFile(new File(dir,
+          "library-" + i + "-sources.jar"), false, 1024, 0), new LibraryFile(new File(dir, "library-" + i + "-javadoc.jar"), false, 1024, 0)));
+    }
+    return libraries;
+  }
+
+  private static List<IClasspathEntry> createEntries(List<ResolvedLibrary> libraries) {
+    final List<IClasspathEntry> entries = new ArrayList<IClasspathEntry>(2 * LIBRARIES);
+    for (ResolvedLibrary library : libraries) {
+      entries.add(EntryInterner.newLibraryEntry(library, null, false));
+    }
+    return entries;
+  }
+
+  /**
+   * Creates the entries like the containers did before their parts were shared.
+   */
+  private static List<IClasspathEntry> createUnsharedEntries(List<ResolvedLibrary> libraries) {
+    final List<IClasspathEntry> entries = new ArrayList<IClasspathEntry>(2 * LIBRARIES);
+    for (ResolvedLibrary library : libraries) {
+      final IClasspathAttribute javadoc = JavaCore.newClasspathAttribute(JAVADOC, library.getJavadoc().getFile().getAbsoluteFile().toURI().toString());
+      entries.add(JavaCore.newLibraryEntry(new Path(library.getLibrary().getFile().getAbsolutePath()), new Path(library.getSource().getFile()
+          .getAbsolutePath()), new Path("/"), new IAccessRule[0], new IClasspathAttribute[] {javadoc}, false));
+    }
+    return entries;
+  }
+
+  /**
+   * Returns the bytes allocated by the current thread so far, which unlike the used heap does not depend on the garbage
+   * collection.
+   */
+  private static long getAllocatedBytes() {
+    final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (threads instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean)threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return 0;
+  }
+}
@@ -0,0 +1,178 @@
+package ch.arktos.dcc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.jar.JarFile;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Tests reading the <code>Class-Path</code> manifest headers with {@link ManifestClassPath} and their transitive
+ * expansion by the {@link LibraryResolver}.
+ */
+public class ManifestClassPathTest {
+
+  private TestDirectory dir;
+
+  @Before
+  public void setUp() throws IOException {
+    dir = new TestDirectory();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    dir.delete();
+  }
+
+  @Test
+  public void testRelativeReferences() throws IOException {
+    final File jar = dir.jar("lib/a.jar", "b.jar ../ext/c.jar  ./d.jar");
+
+    assertEquals(Arrays.asList(new File(dir.getRoot(), "lib/b.jar"), new File(dir.getRoot(), "ext/c.jar"), new File(dir.getRoot(), "lib/d.jar")),
+        ManifestClassPath.getReferencedFiles(LibraryFile.read(jar)));
+  }
+
+  @Test
+  public void testEncodedReferences() throws IOException {
+    final File jar = dir.jar("lib/a.jar", "vendor%20libs/b.jar c%23d.jar");
+
+    assertEquals(Arrays.asList(new File(dir.getRoot(), "lib/vendor libs/b.jar"), new File(dir.getRoot(), "lib/c#d.jar")),
+        ManifestClassPath.getReferencedFiles(LibraryFile.read(jar)));
+  }
+
+  @Test
+  public void testIgnoredReferences() throws IOException {
+    final File jar = dir.jar("lib/a.jar", "http://example.org/b.jar %zz.jar c.jar");
+
+    assertEquals(Collections.singletonList(new File(dir.getRoot(), "lib/c.jar")), ManifestClassPath.getReferencedFiles(LibraryFile.read(jar)));
+  }
+
+  @Test
+  public void testNoHeader() throws IOException {
+    assertTrue(ManifestClassPath.getReferencedFiles(LibraryFile.read(dir.jar("lib/a.jar"))).isEmpty());
+    assertTrue(ManifestClassPath.getReferencedFiles(LibraryFile.read(dir.file("lib/b.jar", new byte[] {1, 2, 3}))).isEmpty());
+    assertTrue(ManifestClassPath.getReferencedFiles(LibraryFile.read(dir.jar("lib/c.txt", "d.jar"))).isEmpty());
+  }
+
+  @Test
+  public void testCachedUntilChanged() throws IOException {
+    final File jar = dir.jar("lib/a.jar", "b.jar");
+    final List<File> files = ManifestClassPath.getReferencedFiles(LibraryFile.read(jar));
+    assertSame(files, ManifestClassPath.getReferencedFiles(LibraryFile.read(jar)));
+
+    dir.jar("lib/a.jar", "b.jar c.jar");
+    assertEquals(Arrays.asList(new File(dir.getRoot(), "lib/b.jar"), new File(dir.getRoot(), "lib/c.jar")),
+        ManifestClassPath.getReferencedFiles(LibraryFile.read(jar)));
+  }
+
+  @Test
+  public void testStoredManifest() throws IOException {
+    final byte[] manifest = "Manifest-Version: 1.0\r\nClass-Path: b.jar\r\n\r\n".getBytes(StandardCharsets.UTF_8);
+    final File jar = dir.file("lib/a.jar", zip(manifest, ZipEntry.STORED));
+
+    assertEquals(Collections.singletonList(new File(dir.getRoot(), "lib/b.jar")), ManifestClassPath.getReferencedFiles(LibraryFile.read(jar)));
+  }
+
+  @Test
+  public void testPrependedDataFallsBackToJarFile() throws IOException {
+    // the offsets of the central directory do not account for the prepended launcher
+    final byte[] manifest = "Manifest-Version: 1.0\r\nClass-Path: b.jar\r\n\r\n".getBytes(StandardCharsets.UTF_8);
+    final byte[] launcher = "#!/bin/sh\nexec java -jar \"$0\" \"$@\"\n".getBytes(StandardCharsets.US_ASCII);
+    final byte[] archive = zip(manifest, ZipEntry.DEFLATED);
+    final byte[] content = Arrays.copyOf(launcher, launcher.length + archive.length);
+    System.arraycopy(archive, 0, content, launcher.length, archive.length);
+    final File jar = dir.file("lib/a.jar", content);
+
+    assertEquals(Collections.singletonList(new File(dir.getRoot(), "lib/b.jar")), ManifestClassPath.getReferencedFiles(LibraryFile.read(jar)));
+  }
+
+  @Test
+  public void testTransitiveReferences() throws IOException {
+    dir.jar("lib/a.jar", "../ext/b.jar");
+    dir.jar("ext/b.jar", "c.jar");
+    dir.jar("ext/c.jar");
+    dir.jar("ext/unreferenced.jar");
+
+    assertEquals(Arrays.asList("lib/a.jar", "ext/b.jar", "ext/c.jar"), resolve());
+  }
+
+  @Test
+  public void testCyclicReferencesEnd() throws IOException {
+    dir.jar("lib/a.jar", "../ext/b.jar");
+    dir.jar("ext/b.jar", "c.jar ../lib/a.jar");
+    dir.jar("ext/c.jar", "b.jar c.jar");
+
+    assertEquals(Arrays.asList("lib/a.jar", "ext/b.jar", "ext/c.jar"), resolve());
+  }
+
+  @Test
+  public void testReferencesIntoLibraryDirectoryAreFiltered() throws IOException {
+    dir.jar("lib/a.jar", "b.zip ../ext/c.jar");
+    dir.jar("lib/b.zip");
+    dir.jar("ext/c.jar", "missing.jar");
+    dir.file("ext/truncated.jar", new byte[] {'P', 'K', 3, 4});
+    dir.jar("ext/d.jar", "truncated.jar");
+
+    assertEquals(Arrays.asList("lib/a.jar", "ext/c.jar"), resolve());
+  }
+
+  /**
+   * Resolves the jars of the library directory <code>lib</code> with the expansion of the manifest headers.
+   * 
+   * @return the paths of the libraries relative to the test directory, with the referenced jars following the
+   *         libraries of the library directory
+   */
+  private List<String> resolve() {
+    final LibraryScan scan = LibraryScan.scan(new File(dir.getRoot(), "lib"));
+    final List<String> paths = new ArrayList<String>();
+    for (ResolvedLibrary library : new LibraryResolver(".*\\.jar", "", "", false, null, true).resolve(scan)) {
+      paths.add(dir.getRoot().toPath().relativize(library.getLibrary().getFile().toPath()).toString().replace(File.separatorChar, '/'));
+    }
+    // the resolver sorts by path, the order of the directories is fixed here
+    Collections.sort(paths, new Comparator<String>() {
+
+      @Override
+      public int compare(String path, String other) {
+        final int byDir = Boolean.compare(!path.startsWith("lib/"), !other.startsWith("lib/"));
+        return byDir != 0 ? byDir : path.compareTo(other);
+      }
+    });
+    return paths;
+  }
+
+  private static byte[] zip(byte[] manifest, int method) throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ZipOutputStream out = new ZipOutputStream(bytes)) {
+      final ZipEntry entry = new ZipEntry(JarFile.MANIFEST_NAME);
+      entry.setMethod(method);
+      if (method == ZipEntry.STORED) {
+        final CRC32 crc = new CRC32();
+        crc.update(manifest);
+        entry.setSize(manifest.length);
+        entry.setCompressedSize(manifest.length);
+        entry.setCrc(crc.getValue());
+      }
+      out.putNextEntry(entry);
+      out.write(manifest);
+      out.closeEntry();
+    }
+    return bytes.toByteArray();
+  }
+}
@@ -0,0 +1,173 @@
+package ch.arktos.dcc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Stress tests the {@link SingleFlight} resolving the containers: callers requesting the same library directory
+ * while it is scanned share one scan, and every invalidation causes exactly one new scan.
+ */
+public class SingleFlightTest {
+
+  private static final int                  THREADS = 16;
+  private static final long                 TIMEOUT = 10000;
+
+  private TestDirectory                     dir;
+  private ExecutorService                   executor;
+  private SingleFlight<String, LibraryScan> flight;
+  private AtomicInteger                     scans;
+
+  @Before
+  public void setUp() throws IOException {
+    dir = new TestDirectory();
+    for (int i = 0; i < 100; i++) {
+      dir.jar("lib/library-" + i + ".jar");
+    }
+    executor = Executors.newFixedThreadPool(THREADS);
+    flight = new SingleFlight<String, LibraryScan>();
+    scans = new AtomicInteger();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    executor.shutdownNow();
+    dir.delete();
+  }
+
+  @Test
+  public void testOneScanPerInvalidation() throws Exception {
+    LibraryScan previous = null;
+    for (int invalidation = 1; invalidation <= 20; invalidation++) {
+      final List<LibraryScan> results = resolveConcurrently();
+
+      assertEquals(invalidation, scans.get());
+      for (LibraryScan result : results) {
+        assertSame(results.get(0), result);
+      }
+      assertNotSame(previous, results.get(0));
+      previous = results.get(0);
+    }
+  }
+
+  @Test
+  public void testSequentialCallersScanAgain() {
+    final LibraryScan first = flight.run("lib", new Scan(1));
+    final LibraryScan second = flight.run("lib", new Scan(1));
+
+    assertEquals(2, scans.get());
+    assertNotSame(first, second);
+    assertEquals(0, flight.getCallers("lib"));
+  }
+
+  @Test
+  public void testFailureIsSharedAndNotCached() throws Exception {
+    final List<Future<LibraryScan>> results = new ArrayList<Future<LibraryScan>>();
+    for (int i = 0; i < THREADS; i++) {
+      results.add(executor.submit(new Callable<LibraryScan>() {
+
+        @Override
+        public LibraryScan call() {
+          return flight.run("lib", new Callable<LibraryScan>() {
+
+            @Override
+            public LibraryScan call() throws Exception {
+              awaitCallers(THREADS);
+              scans.incrementAndGet();
+              throw new IllegalStateException("scan failed");
+            }
+          });
+        }
+      }));
+    }
+
+    for (Future<LibraryScan> result : results) {
+      try {
+        result.get(TIMEOUT, TimeUnit.MILLISECONDS);
+        fail("the failure of the scan is not thrown");
+      }
+      catch (ExecutionException e) {
+        assertTrue(e.getCause() instanceof IllegalStateException);
+      }
+    }
+    assertEquals(1, scans.get());
+
+    flight.run("lib", new Scan(1));
+    assertEquals(2, scans.get());
+  }
+
+  /**
+   * Lets all threads request the library directory at once. The scan only starts once all of them have joined it, so
+   * every thread arriving during the scan is accounted for.
+   */
+  private List<LibraryScan> resolveConcurrently() throws Exception {
+    final CountDownLatch start = new CountDownLatch(1);
+    final List<Future<LibraryScan>> futures = new ArrayList<Future<LibraryScan>>();
+    for (int i = 0; i < THREADS; i++) {
+      futures.add(executor.submit(new Callable<LibraryScan>() {
+
+        @Override
+        public LibraryScan call() throws InterruptedException {
+          start.await();
+          return flight.run("lib", new Scan(THREADS));
+        }
+      }));
+    }
+    start.countDown();
+
+    final List<LibraryScan> results = new ArrayList<LibraryScan>();
+    for (Future<LibraryScan> future : futures) {
+      results.add(future.get(TIMEOUT, TimeUnit.MILLISECONDS));
+    }
+    return results;
+  }
+
+  private void awaitCallers(int callers) throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + TIMEOUT;
+    while (flight.getCallers("lib") < callers) {
+      if (System.currentTimeMillis() > deadline) {
+        fail("only " + flight.getCallers("lib") + " of " + callers + " callers joined the scan");
+      }
+      Thread.sleep(1);
+    }
+  }
+
+  /**
+   * Scans the library directory once the given number of callers share the scan.
+   */
+  private class Scan implements Callable<LibraryScan> {
+
+    private final int callers;
+
+    Scan(int callers) {
+      this.callers = callers;
+    }
+
+    @Override
+    public LibraryScan call() throws InterruptedException {
+      awaitCallers(callers);
+      scans.incrementAndGet();
+      return LibraryScan.scan(new File(dir.getRoot(), "lib"));
+    }
+  }
+}
@@ -0,0 +1,97 @@
+package ch.arktos.dcc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Tests that a scan survives a round trip through the {@link SnapshotStore} and that a restored scan whose library
+ * directory changed in the meantime is not taken as current.
+ */
+public class SnapshotStoreTest {
+
+  private TestDirectory dir;
+  private File          libDir;
+  private SnapshotStore store;
+
+  @Before
+  public void setUp() throws IOException {
+    dir = new TestDirectory();
+    libDir = dir.dir("lib");
+    dir.jar("lib/a.jar");
+    dir.jar("lib/b.jar");
+    dir.jar("lib/src/a-sources.jar");
+    store = new SnapshotStore(dir.dir("store"));
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    dir.delete();
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    final LibraryScan scan = LibraryScan.scan(libDir);
+    store.save("project|container", scan);
+
+    final LibraryScan loaded = store.load("project|container");
+    assertEquals(scan.getRoots(), loaded.getRoots());
+    assertEquals(scan.getMaxDepth(), loaded.getMaxDepth());
+    assertEquals(scan.getExcludeRegex(), loaded.getExcludeRegex());
+
+    final List<LibraryFile> directories = scan.getDirectories();
+    assertEquals(directories.size(), loaded.getDirectories().size());
+    for (int i = 0; i < directories.size(); i++) {
+      final LibraryFile directory = directories.get(i);
+      assertEquals(directory.getFile(), loaded.getDirectories().get(i).getFile());
+      assertEquals(directory.getLastModified(), loaded.getDirectories().get(i).getLastModified());
+      assertEquals(scan.getEntries(directory.getFile()), loaded.getEntries(directory.getFile()));
+      assertEquals(scan.getEntryCount(directory.getFile()), loaded.getEntryCount(directory.getFile()));
+    }
+    assertTrue(DirectoryFingerprint.of(loaded).isCurrent());
+  }
+
+  @Test
+  public void testStaleSnapshotIsRejected() throws IOException {
+    store.save("project|container", LibraryScan.scan(libDir));
+    dir.jar("lib/c.jar");
+
+    assertFalse(DirectoryFingerprint.of(store.load("project|container")).isCurrent());
+  }
+
+  @Test
+  public void testStaleSubdirectoryIsRejected() throws IOException {
+    store.save("project|container", LibraryScan.scan(libDir));
+    dir.jar("lib/src/b-sources.jar");
+
+    assertFalse(DirectoryFingerprint.of(store.load("project|container")).isCurrent());
+  }
+
+  @Test
+  public void testMissingOrForeignSnapshot() throws IOException {
+    assertNull(store.load("project|container"));
+
+    store.save("project|container", LibraryScan.scan(libDir));
+    assertNull(store.load("other|container"));
+  }
+
+  @Test
+  public void testCorruptSnapshotIsIgnored() throws IOException {
+    store.save("project|container", LibraryScan.scan(libDir));
+    for (File file : new File(dir.getRoot(), "store").listFiles()) {
+      dir.file("store/" + file.getName(), new byte[] {1, 2, 3});
+    }
+
+    assertNull(store.load("project|container"));
+  }
+}
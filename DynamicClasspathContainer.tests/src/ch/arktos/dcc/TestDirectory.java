@@ -0,0 +1,145 @@
+package ch.arktos.dcc;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+
+/**
+ * A temporary directory the tests create their library trees in. It is deleted with everything in it by
+ * {@link #delete()}.
+ */
+public class TestDirectory {
+
+  private final File root;
+
+  /**
+   * Creates a new temporary directory.
+   * 
+   * @throws IOException
+   *           if the directory cannot be created
+   */
+  public TestDirectory() throws IOException {
+    this.root = Files.createTempDirectory("dcc").toFile().getCanonicalFile();
+  }
+
+  /**
+   * Returns the temporary directory.
+   * 
+   * @return the directory
+   */
+  public File getRoot() {
+    return root;
+  }
+
+  /**
+   * Creates a directory and its parents.
+   * 
+   * @param path
+   *          the path relative to the temporary directory
+   * @return the directory
+   */
+  public File dir(String path) {
+    final File dir = new File(root, path);
+    dir.mkdirs();
+    return dir;
+  }
+
+  /**
+   * Creates a file with the given content, replacing an existing one.
+   * 
+   * @param path
+   *          the path relative to the temporary directory
+   * @param content
+   *          the content
+   * @return the file
+   * @throws IOException
+   *           if the file cannot be written
+   */
+  public File file(String path, byte[] content) throws IOException {
+    final File file = new File(root, path);
+    file.getParentFile().mkdirs();
+    try (OutputStream out = new FileOutputStream(file)) {
+      out.write(content);
+    }
+    return file;
+  }
+
+  /**
+   * Creates a jar with one class entry and a manifest, replacing an existing one.
+   * 
+   * @param path
+   *          the path relative to the temporary directory
+   * @param classPath
+   *          the value of the <code>Class-Path</code> header, or <code>null</code> for none
+   * @return the jar
+   * @throws IOException
+   *           if the jar cannot be written
+   */
+  public File jar(String path, String classPath) throws IOException {
+    final Manifest manifest = new Manifest();
+    manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    if (classPath != null) {
+      manifest.getMainAttributes().put(Attributes.Name.CLASS_PATH, classPath);
+    }
+
+    final File jar = new File(root, path);
+    jar.getParentFile().mkdirs();
+    try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar), manifest)) {
+      out.putNextEntry(new ZipEntry("ch/arktos/dcc/Test.class"));
+      out.write(new byte[] {(byte)0xCA, (byte)0xFE, (byte)0xBA, (byte)0xBE});
+      out.closeEntry();
+    }
+    return jar;
+  }
+
+  /**
+   * Creates a jar without a <code>Class-Path</code> header.
+   * 
+   * @param path
+   *          the path relative to the temporary directory
+   * @return the jar
+   * @throws IOException
+   *           if the jar cannot be written
+   */
+  public File jar(String path) throws IOException {
+    return jar(path, null);
+  }
+
+  /**
+   * Deletes the temporary directory with everything in it.
+   * 
+   * @throws IOException
+   *           if a file cannot be deleted
+   */
+  public void delete() throws IOException {
+    if (!root.exists()) {
+      return;
+    }
+
+    Files.walkFileTree(root.toPath(), new SimpleFileVisitor<Path>() {
+
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+        Files.delete(file);
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+        Files.delete(dir);
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+}
@@ -0,0 +1,98 @@
+package ch.arktos.dcc;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+
+/**
+ * Tests how the {@link VersionPolicy} parses and compares the versions in library file names and which versions of an
+ * artifact it keeps, independent of the order the libraries are listed in.
+ */
+public class VersionPolicyTest {
+
+  private static final VersionPolicy NEWEST = new VersionPolicy(Collections.<String> emptyList());
+
+  @Test
+  public void testParseName() {
+    assertArrayEquals(new String[] {"commons-lang3", "3.12.0"}, VersionPolicy.parseName("commons-lang3-3.12.0.jar"));
+    assertArrayEquals(new String[] {"cats-core_2.13", "2.9.0"}, VersionPolicy.parseName("cats-core_2.13-2.9.0.jar"));
+    assertArrayEquals(new String[] {"foo", "1.0"}, VersionPolicy.parseName("foo_1.0.jar"));
+    assertArrayEquals(new String[] {"guava", "31.1-jre"}, VersionPolicy.parseName("guava-31.1-jre.jar"));
+    assertArrayEquals(new String[] {"foo", "1.0"}, VersionPolicy.parseName("foo-1.0"));
+    assertNull(VersionPolicy.parseName("foo.jar"));
+    assertNull(VersionPolicy.parseName("foo-bar.jar"));
+    assertNull(VersionPolicy.parseName("-1.0.jar"));
+  }
+
+  @Test
+  public void testCompareVersions() {
+    assertOlder("1.2", "1.10");
+    assertOlder("1.2", "1.2.1");
+    assertOlder("1.2-beta", "1.2");
+    assertOlder("1.2-alpha", "1.2-beta");
+    assertOlder("1.2-beta", "1.2.0.1");
+    assertOlder("9", "10");
+    assertOlder("99999999999999999999", "100000000000000000000");
+    assertEquals(0, VersionPolicy.compareVersions("1.02", "1.2"));
+    assertEquals(0, VersionPolicy.compareVersions("1.0-RC1", "1.0.rc1"));
+  }
+
+  @Test
+  public void testNewestVersionIsKept() {
+    final List<ResolvedLibrary> collapsed = new ArrayList<ResolvedLibrary>();
+    final List<ResolvedLibrary> kept = NEWEST.collapse(libraries("lib/foo-1.0.jar", "lib/foo-1.10.jar", "lib/foo-1.9.jar", "lib/bar.jar"), collapsed);
+
+    assertEquals(libraries("lib/foo-1.10.jar", "lib/bar.jar"), kept);
+    assertEquals(libraries("lib/foo-1.0.jar", "lib/foo-1.9.jar"), collapsed);
+  }
+
+  @Test
+  public void testPinnedVersionsAreKept() {
+    final VersionPolicy policy = VersionPolicy.parse("versions=foo-1.0, foo-1.9.jar");
+    assertEquals(Arrays.asList("foo-1.0", "foo-1.9.jar"), new ArrayList<String>(policy.getPins()));
+    assertEquals("versions=foo-1.0,foo-1.9.jar", policy.toSegment());
+
+    final List<ResolvedLibrary> kept = policy.collapse(libraries("lib/foo-1.0.jar", "lib/foo-1.10.jar", "lib/foo-1.9.jar"), null);
+    assertEquals(libraries("lib/foo-1.0.jar", "lib/foo-1.9.jar"), kept);
+  }
+
+  @Test
+  public void testEqualVersionsDoNotDependOnOrder() {
+    final List<ResolvedLibrary> libraries = libraries("lib/foo_1.0.jar", "lib/foo-1.0.jar", "lib/b/foo-1.0.jar", "lib/a/foo-1.0.jar");
+    final List<ResolvedLibrary> expected = libraries("lib/a/foo-1.0.jar");
+    for (int i = 0; i < 10; i++) {
+      Collections.shuffle(libraries);
+      assertEquals(expected, NEWEST.collapse(libraries, null));
+    }
+  }
+
+  @Test
+  public void testUnversionedLibrariesAreNotCollapsed() {
+    final List<ResolvedLibrary> libraries = libraries("lib/foo.jar", "lib/a/foo.jar");
+    assertSame(libraries, NEWEST.collapse(libraries, null));
+  }
+
+  private static void assertOlder(String version, String newer) {
+    assertTrue(version + " < " + newer, VersionPolicy.compareVersions(version, newer) < 0);
+    assertTrue(newer + " > " + version, VersionPolicy.compareVersions(newer, version) > 0);
+  }
+
+  private static List<ResolvedLibrary> libraries(String... paths) {
+    final List<ResolvedLibrary> libraries = new ArrayList<ResolvedLibrary>();
+    for (String path : paths) {
+      libraries.add(new ResolvedLibrary(new LibraryFile(new File(path), false, 0, 0), null, null));
+    }
+    return libraries;
+  }
+}
@@ -0,0 +1,82 @@
+package ch.arktos.dcc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Tests the {@link WeakInterner} sharing the paths and attributes of the library entries: the equal files of different
+ * scans share one instance and the instances are released with their last user. The entries themselves are tested by
+ * {@link EntryInternerTest}.
+ */
+public class WeakInternerTest {
+
+  private static final int                            LIBRARIES = 20000;
+  private static final File                           LIB_DIR   = new File(System.getProperty("java.io.tmpdir"), "dcc/lib");
+
+  /** Stands in for the path of a library, which holds its segments. */
+  private static final WeakInterner.Factory<String[]> SEGMENTS  = new WeakInterner.Factory<String[]>() {
+
+    @Override
+    public String[] create(String key) {
+      return key.split(Pattern.quote(File.separator));
+    }
+  };
+
+  private WeakInterner<String[]>                      interner;
+
+  @Before
+  public void setUp() {
+    interner = new WeakInterner<String[]>();
+  }
+
+  @Test
+  public void testEqualFilesShareOneInstance() {
+    final File first = new File(LIB_DIR, "library.jar");
+    final File second = new File(LIB_DIR, "library.jar");
+    assertNotSame(first, second);
+
+    final String[] path = interner.intern(first.getAbsolutePath(), SEGMENTS);
+    assertSame(path, interner.intern(second.getAbsolutePath(), SEGMENTS));
+    assertNotSame(path, interner.intern(new File(LIB_DIR, "other.jar").getAbsolutePath(), SEGMENTS));
+    assertEquals(2, interner.size());
+  }
+
+  @Test
+  public void testCollectedInstancesAreReleased() throws InterruptedException {
+    assertEquals(LIBRARIES, intern(scan()).size());
+    for (int i = 0; i < 50 && interner.size() > 0; i++) {
+      System.gc();
+      Thread.sleep(20);
+    }
+    assertEquals(0, interner.size());
+  }
+
+  /**
+   * Returns the files of a scan, which are equal to but not the same as those of other scans.
+   */
+  private static List<File> scan() {
+    final List<File> files = new ArrayList<File>(LIBRARIES);
+    for (int i = 0; i < LIBRARIES; i++) {
+      files.add(new File(LIB_DIR, "vendor-" + i % 10 + File.separator + "library-" + i + ".jar"));
+    }
+    return files;
+  }
+
+  private List<String[]> intern(List<File> files) {
+    final List<String[]> paths = new ArrayList<String[]>(files.size());
+    for (File file : files) {
+      paths.add(interner.intern(file.getAbsolutePath(), SEGMENTS));
+    }
+    return paths;
+  }
+}
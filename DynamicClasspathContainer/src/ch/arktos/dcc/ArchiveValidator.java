@@ -0,0 +1,232 @@
+
+package ch.arktos.dcc;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+
+/**
+ * Detects truncated archives, e.g. jars which are still being copied into a library directory, without opening them
+ * as zip files. Only the end of central directory record at the end of the archive is read with a positioned read,
+ * and the central directory it points to has to lie within the archive.
+ * <p>
+ * The results are cached per file together with its size and modification time: an archive is only checked again
+ * once it changed, and an invalid archive stays quarantined until then. Since replacing or completing an archive in
+ * place does not touch its directory, the quarantined archives are part of the {@link DirectoryFingerprint} of a
+ * resolution, see {@link #getQuarantined(LibraryScan)}. Files which are no zip or jar archives are not checked.
+ */
+public class ArchiveValidator {
+
+  private static final int                             EOCD_SIGNATURE = 0x06054b50;
+  private static final int                             EOCD_SIZE      = 22;
+  private static final int                             MAX_COMMENT    = 0xFFFF;
+  private static final long                            ZIP64_MARKER   = 0xFFFFFFFFL;
+
+  private static final ConcurrentMap<File, Validation> VALIDATIONS    = new ConcurrentHashMap<File, Validation>();
+
+  /**
+   * Checks whether a library can be opened as an archive.
+   *
+   * @param library
+   *          the library with the attributes found by the scan
+   * @return false, if the library is a truncated or corrupt archive or it changed since it has been scanned
+   */
+  public static boolean isValid(LibraryFile library) {
+    if (!isArchive(library.getName())) {
+      return true;
+    }
+
+    final Validation validation = VALIDATIONS.get(library.getFile());
+    if (validation != null && validation.library.equals(library)) {
+      return validation.valid;
+    }
+
+    final Boolean valid = check(library);
+    if (valid != null) {
+      VALIDATIONS.put(library.getFile(), new Validation(library, valid));
+      return valid;
+    }
+
+    // changed since the scan, e.g. replaced in place or still being copied, which does not touch the directory, so
+    // the current file is validated instead
+    final LibraryFile current = LibraryFile.read(library.getFile());
+    if (current == null || current.isDirectory()) {
+      return false;
+    }
+    if (validation != null && validation.library.equals(current)) {
+      return validation.valid;
+    }
+    final Boolean currentValid = check(current);
+    if (currentValid == null) {
+      // still changing, the quarantine of the current attributes is noticed by the fingerprint
+      VALIDATIONS.put(library.getFile(), new Validation(current, false));
+      return false;
+    }
+    VALIDATIONS.put(library.getFile(), new Validation(current, currentValid));
+    return currentValid;
+  }
+
+  /**
+   * Returns the archives listed by a scan which are currently quarantined, with the attributes they have been checked
+   * with. The results of archives no longer listed in the scanned directories are dropped, so that the fingerprint
+   * does not wait for a deleted archive to change.
+   *
+   * @param scan
+   *          the scan
+   * @return the quarantined archives listed by the scan
+   */
+  public static List<LibraryFile> getQuarantined(LibraryScan scan) {
+    final Set<File> directories = new HashSet<File>();
+    final Set<File> listed = new HashSet<File>();
+    for (LibraryFile directory : scan.getDirectories()) {
+      directories.add(directory.getFile());
+      for (LibraryFile entry : scan.getEntries(directory.getFile())) {
+        listed.add(entry.getFile());
+      }
+    }
+
+    final List<LibraryFile> quarantined = new ArrayList<LibraryFile>();
+    for (Map.Entry<File, Validation> entry : VALIDATIONS.entrySet()) {
+      final Validation validation = entry.getValue();
+      if (listed.contains(entry.getKey())) {
+        if (!validation.valid) {
+          quarantined.add(validation.library);
+        }
+      }
+      else if (directories.contains(entry.getKey().getParentFile())) {
+        VALIDATIONS.remove(entry.getKey(), validation);
+      }
+    }
+    return quarantined;
+  }
+
+  static boolean isArchive(String name) {
+    final int length = name.length();
+    return length > 4 && (name.regionMatches(true, length - 4, ".jar", 0, 4) || name.regionMatches(true, length - 4, ".zip", 0, 4));
+  }
+
+  /**
+   * Checks the end of central directory record of an archive.
+   *
+   * @return whether the archive is valid or <code>null</code> if the file does not match the attributes of the scan
+   */
+  private static Boolean check(LibraryFile library) {
+    try (FileChannel channel = FileChannel.open(library.getFile().toPath(), StandardOpenOption.READ)) {
+      final long size = channel.size();
+      if (size != library.getSize()) {
+        return null;
+      }
+
+      final long[] directory = findCentralDirectory(channel, size);
+      if (directory == null) {
+        return false;
+      }
+      // for zip64 archives the presence of the record is good enough
+      return directory[0] < 0 || directory[0] + directory[1] <= directory[2];
+    }
+    catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Locates the central directory of an archive with the end of central directory record.
+   * 
+   * @param channel
+   *          the channel of the archive
+   * @param size
+   *          the size of the archive
+   * @return the offset and the size of the central directory followed by the offset of the record, offset and size
+   *         are -1 if the archive uses zip64 extensions, or <code>null</code> if there is no valid record
+   * @throws IOException
+   *           if the archive cannot be read
+   */
+  static long[] findCentralDirectory(FileChannel channel, long size) throws IOException {
+    if (size < EOCD_SIZE) {
+      return null;
+    }
+
+    // usually the record is not followed by a comment, so the last bytes are read first
+    ByteBuffer tail = read(channel, size - EOCD_SIZE, EOCD_SIZE);
+    int record = tail.getInt(0) == EOCD_SIGNATURE ? 0 : -1;
+    long tailStart = size - EOCD_SIZE;
+    if (record < 0) {
+      final int length = (int)Math.min(size, EOCD_SIZE + MAX_COMMENT);
+      tailStart = size - length;
+      tail = read(channel, tailStart, length);
+      record = findRecord(tail);
+      if (record < 0) {
+        return null;
+      }
+    }
+
+    final long recordStart = tailStart + record;
+    final long directorySize = tail.getInt(record + 12) & ZIP64_MARKER;
+    final long directoryOffset = tail.getInt(record + 16) & ZIP64_MARKER;
+    if (directoryOffset == ZIP64_MARKER || directorySize == ZIP64_MARKER) {
+      // the actual values are in the zip64 record
+      return new long[] {-1, -1, recordStart};
+    }
+    return new long[] {directoryOffset, directorySize, recordStart};
+  }
+
+  /**
+   * Reads a part of a file with a positioned read.
+   * 
+   * @param channel
+   *          the channel of the file
+   * @param position
+   *          the position to read from
+   * @param length
+   *          the number of bytes to read
+   * @return the little endian buffer holding the bytes
+   * @throws IOException
+   *           if the file cannot be read or ends before
+   */
+  static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+    final ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new IOException("Unexpected end of file");
+      }
+    }
+    return buffer;
+  }
+
+  /**
+   * Searches the record backwards, it is only accepted if its comment ends exactly at the end of the archive.
+   */
+  private static int findRecord(ByteBuffer tail) {
+    for (int i = tail.capacity() - EOCD_SIZE; i >= 0; i--) {
+      if (tail.getInt(i) == EOCD_SIGNATURE && i + EOCD_SIZE + (tail.getShort(i + 20) & 0xFFFF) == tail.capacity()) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * The result of checking an archive with the given attributes.
+   */
+  private static class Validation {
+
+    private final LibraryFile library;
+    private final boolean     valid;
+
+    Validation(LibraryFile library, boolean valid) {
+      this.library = library;
+      this.valid = valid;
+    }
+  }
+}
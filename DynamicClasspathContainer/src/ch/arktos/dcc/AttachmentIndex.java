@@ -0,0 +1,106 @@
+
+package ch.arktos.dcc;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * Index of the attachments (sources or javadoc) found in a library directory and its direct subdirectories. The
+ * attachments are keyed by the base name of the library they belong to, i.e. the library file name without its
+ * extension. The index is built from a {@link LibraryScan}, so looking up the attachment of a library neither lists
+ * the directories nor evaluates a regular expression.
+ * <p>
+ * If several directories contain an attachment for the same library, the one found in the last directory wins. Within
+ * a single directory the first match wins. If the scan combines several library directories, an attachment found below
+ * a library directory takes precedence over the ones found below the following library directories.
+ */
+public class AttachmentIndex {
+
+  private final Map<String, LibraryFile> attachments = new HashMap<String, LibraryFile>();
+  private final Map<String, File>        roots       = new HashMap<String, File>();
+
+  /**
+   * Builds the index from the entries of an existing scan.
+   *
+   * @param scan
+   *          the scan of the library directory
+   * @param regex
+   *          regular expression an attachment file name has to match after the library base name
+   */
+  public AttachmentIndex(LibraryScan scan, String regex) {
+    if (regex == null || regex.equals("")) {
+      return;
+    }
+
+    final String suffixRegex = getSuffixRegex(regex);
+    final FileNameMatcher suffixMatcher = FileNameMatcher.compile(suffixRegex);
+    final AttachmentRegexFilter regexFilter = new AttachmentRegexFilter(".*".concat(suffixRegex));
+
+    for (LibraryFile dir : scan.getDirectories()) {
+      final File root = scan.getRootOf(dir.getFile());
+      final Set<String> dirKeys = new HashSet<String>();
+      for (LibraryFile file : scan.getEntries(dir.getFile())) {
+        if (!regexFilter.accept(file)) {
+          continue;
+        }
+
+        final String key = getBaseName(file.getName(), suffixMatcher);
+        if (key == null || !dirKeys.add(key)) {
+          continue;
+        }
+        final File keyRoot = roots.get(key);
+        if (keyRoot == null || keyRoot.equals(root)) {
+          attachments.put(key, file);
+          roots.put(key, root);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the attachment of the given library.
+   *
+   * @param library
+   *          the library file
+   * @return the attachment file or <code>null</code> if there is none
+   */
+  public LibraryFile get(LibraryFile library) {
+    if (attachments.isEmpty()) {
+      return null;
+    }
+
+    final String name = library.getName();
+    final int extension = name.lastIndexOf('.');
+    return attachments.get(extension < 0 ? name : name.substring(0, extension));
+  }
+
+  /**
+   * Returns the number of libraries an attachment is known for.
+   *
+   * @return the size of the index
+   */
+  public int size() {
+    return attachments.size();
+  }
+
+  /**
+   * Returns the part of an attachment regular expression that has to match after the library base name.
+   * 
+   * @param regex
+   *          the configured regular expression
+   * @return the regular expression without a leading <code>.*</code>
+   */
+  static String getSuffixRegex(String regex) {
+    // the library base name is expected in front of the part matched by the regular expression
+    return regex.startsWith(".*") ? regex.substring(2) : regex;
+  }
+
+  private static String getBaseName(String name, FileNameMatcher suffixMatcher) {
+    final int start = suffixMatcher.matchStart(name);
+    return start < 0 ? null : name.substring(0, start);
+  }
+}
@@ -21,7 +21,7 @@ import java.io.FilenameFilter;
  */
 public class AttachmentRegexFilter implements FilenameFilter {
 
-	private final String _regex;
+	private final FileNameMatcher _matcher;
 
 	/**
 	 * Instantiates a new attachment regex filter.
@@ -30,7 +30,7 @@ public class AttachmentRegexFilter implements FilenameFilter {
 	 *            regular expression that is used to filter files
 	 */
 	public AttachmentRegexFilter(String regex) {
-		_regex = regex;
+		_matcher = FileNameMatcher.compile(regex);
 	}
 
 	/**
@@ -49,6 +49,17 @@ public class AttachmentRegexFilter implements FilenameFilter {
 		}
 
 		final File file = new File(dir, name);
-		return !file.isDirectory() && name.matches(_regex);
+		return !file.isDirectory() && _matcher.matches(name);
+	}
+
+	/**
+	 * Accepts a scanned file without querying the file system again.
+	 * 
+	 * @param file
+	 *            the scanned file
+	 * @return true, if the file is an attachment
+	 */
+	public boolean accept(LibraryFile file) {
+		return !file.isDirectory() && _matcher.matches(file.getName());
 	}
 }
@@ -0,0 +1,47 @@
+
+package ch.arktos.dcc;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jdt.core.JavaModelException;
+
+
+/**
+ * Looks up the source and javadoc attachments of the containers which have been published without them, see
+ * {@link DynamicClasspathContainer#DEFERRED_ATTACHMENTS_PROPERTY}, and publishes the enriched entries. The job is
+ * delayed, so that the containers initialized together are enriched with a single update per container path.
+ */
+public class AttachmentResolveJob extends Job {
+
+  private final LibraryChangeListener listener;
+
+  /**
+   * Instantiates a new attachment resolve job.
+   * 
+   * @param listener
+   *          the listener tracking the published containers
+   */
+  public AttachmentResolveJob(LibraryChangeListener listener) {
+    super(Messages.AttachmentJobName);
+    this.listener = listener;
+    setPriority(DECORATE);
+  }
+
+  @Override
+  public boolean belongsTo(Object family) {
+    return family == AttachmentResolveJob.class;
+  }
+
+  @Override
+  protected IStatus run(IProgressMonitor monitor) {
+    try {
+      listener.resolveAttachments(monitor);
+      return Status.OK_STATUS;
+    }
+    catch (JavaModelException e) {
+      return e.getStatus();
+    }
+  }
+}
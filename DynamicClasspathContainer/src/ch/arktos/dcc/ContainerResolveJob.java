@@ -0,0 +1,69 @@
+
+package ch.arktos.dcc;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.JavaModelException;
+import org.eclipse.osgi.util.NLS;
+
+
+/**
+ * Resolves a container in the background and replaces the provisional container published during the initialization
+ * with the result. If the job is canceled, the provisional container is invalidated, so that the next request for its
+ * entries resolves them synchronously.
+ */
+public class ContainerResolveJob extends Job {
+
+  private final LibraryChangeListener     listener;
+  private final IJavaProject              project;
+  private final DynamicClasspathContainer container;
+
+  /**
+   * Instantiates a new container resolve job.
+   * 
+   * @param listener
+   *          the listener tracking the published containers
+   * @param project
+   *          the project referencing the container
+   * @param container
+   *          the provisional container
+   */
+  public ContainerResolveJob(LibraryChangeListener listener, IJavaProject project, DynamicClasspathContainer container) {
+    super(NLS.bind(Messages.ResolveJobName, container.getDescription()));
+    this.listener = listener;
+    this.project = project;
+    this.container = container;
+    setPriority(LONG);
+  }
+
+  @Override
+  public boolean belongsTo(Object family) {
+    return family == ContainerResolveJob.class;
+  }
+
+  @Override
+  protected IStatus run(IProgressMonitor monitor) {
+    final SubMonitor progress = SubMonitor.convert(monitor, 4);
+    try {
+      final DynamicClasspathContainer resolved = container.resolve(progress.newChild(3));
+
+      // a container published in the meantime is more recent than the one resolved here
+      if (listener.getContainer(project, container.getPath()) == container) {
+        listener.publish(project, resolved, progress.newChild(1));
+      }
+      return Status.OK_STATUS;
+    }
+    catch (OperationCanceledException e) {
+      container.invalidate();
+      return Status.CANCEL_STATUS;
+    }
+    catch (JavaModelException e) {
+      return e.getStatus();
+    }
+  }
+}
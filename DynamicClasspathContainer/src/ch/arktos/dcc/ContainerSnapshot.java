@@ -0,0 +1,247 @@
+
+package ch.arktos.dcc;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.jdt.core.IClasspathAttribute;
+import org.eclipse.jdt.core.IClasspathEntry;
+
+
+/**
+ * Immutable result of resolving a {@link DynamicClasspathContainer}. The snapshot stays valid as long as the library
+ * directory it was resolved from has the same {@link DirectoryFingerprint}. It keeps the scan and the resolved
+ * libraries, so that changes reported for single files can be applied without scanning the directory again.
+ */
+public class ContainerSnapshot {
+
+  private final List<File>                            libRoots;
+  private final LibraryScan                           scan;
+  private final DirectoryFingerprint                  fingerprint;
+  private final IClasspathEntry[]                     entries;
+  private final Map<ResolvedLibrary, IClasspathEntry> entryMap;
+  private final List<ResolvedLibrary>                 collapsed;
+  private final boolean                               attachmentsDeferred;
+  private final boolean                               provisional;
+
+  /**
+   * Instantiates a new container snapshot.
+   * 
+   * @param libRoots
+   *          the library directories or <code>null</code> if none is available in the workspace
+   * @param scan
+   *          the scan the entries were resolved from, or <code>null</code> if there is no library directory
+   * @param fingerprint
+   *          the fingerprint of the scanned directories, or <code>null</code> if there is no library directory
+   * @param libraries
+   *          the resolved libraries
+   * @param entries
+   *          the classpath entries of the resolved libraries, in the same order
+   */
+  public ContainerSnapshot(List<File> libRoots, LibraryScan scan, DirectoryFingerprint fingerprint, List<ResolvedLibrary> libraries, IClasspathEntry[] entries) {
+    this(libRoots, scan, fingerprint, libraries, entries, Collections.<ResolvedLibrary> emptyList(), false, false);
+  }
+
+  /**
+   * Instantiates a new container snapshot.
+   * 
+   * @param libRoots
+   *          the library directories or <code>null</code> if none is available in the workspace
+   * @param scan
+   *          the scan the entries were resolved from, or <code>null</code> if there is no library directory
+   * @param fingerprint
+   *          the fingerprint of the scanned directories, or <code>null</code> if there is no library directory
+   * @param libraries
+   *          the resolved libraries
+   * @param entries
+   *          the classpath entries of the resolved libraries, in the same order
+   * @param collapsed
+   *          the libraries dropped in favor of another version of the same artifact
+   */
+  public ContainerSnapshot(List<File> libRoots, LibraryScan scan, DirectoryFingerprint fingerprint, List<ResolvedLibrary> libraries, IClasspathEntry[] entries, List<ResolvedLibrary> collapsed) {
+    this(libRoots, scan, fingerprint, libraries, entries, collapsed, false, false);
+  }
+
+  /**
+   * Instantiates a new container snapshot.
+   * 
+   * @param libRoots
+   *          the library directories or <code>null</code> if none is available in the workspace
+   * @param scan
+   *          the scan the entries were resolved from, or <code>null</code> if there is no library directory
+   * @param fingerprint
+   *          the fingerprint of the scanned directories, or <code>null</code> if there is no library directory
+   * @param libraries
+   *          the resolved libraries
+   * @param entries
+   *          the classpath entries of the resolved libraries, in the same order
+   * @param collapsed
+   *          the libraries dropped in favor of another version of the same artifact
+   * @param attachmentsDeferred
+   *          whether the attachments have not been looked up yet
+   */
+  public ContainerSnapshot(List<File> libRoots, LibraryScan scan, DirectoryFingerprint fingerprint, List<ResolvedLibrary> libraries, IClasspathEntry[] entries, List<ResolvedLibrary> collapsed, boolean attachmentsDeferred) {
+    this(libRoots, scan, fingerprint, libraries, entries, collapsed, attachmentsDeferred, false);
+  }
+
+  private ContainerSnapshot(List<File> libRoots, LibraryScan scan, DirectoryFingerprint fingerprint, List<ResolvedLibrary> libraries, IClasspathEntry[] entries, List<ResolvedLibrary> collapsed, boolean attachmentsDeferred, boolean provisional) {
+    this.provisional = provisional;
+    this.collapsed = collapsed;
+    this.attachmentsDeferred = attachmentsDeferred;
+    this.libRoots = libRoots;
+    this.scan = scan;
+    this.fingerprint = fingerprint;
+    this.entries = entries.clone();
+    this.entryMap = new HashMap<ResolvedLibrary, IClasspathEntry>();
+    for (int i = 0; i < libraries.size(); i++) {
+      entryMap.put(libraries.get(i), entries[i]);
+    }
+  }
+
+  /**
+   * Creates a provisional snapshot, which is served as is until the container has been resolved in the background.
+   * 
+   * @param entries
+   *          the last known entries
+   * @return the snapshot
+   */
+  public static ContainerSnapshot provisional(IClasspathEntry[] entries) {
+    return new ContainerSnapshot(null, null, null, Collections.<ResolvedLibrary> emptyList(), entries, Collections.<ResolvedLibrary> emptyList(), false, true);
+  }
+
+  /**
+   * Checks whether the snapshot still reflects the library directory.
+   * 
+   * @param currentLibRoots
+   *          the library directories as currently found in the workspace or <code>null</code> if there are none
+   * @return true, if the snapshot can be reused
+   */
+  public boolean isCurrent(List<File> currentLibRoots) {
+    if (provisional) {
+      return true;
+    }
+    if (currentLibRoots == null || libRoots == null) {
+      return currentLibRoots == libRoots;
+    }
+    return currentLibRoots.equals(libRoots) && fingerprint.isCurrent();
+  }
+
+  public boolean isProvisional() {
+    return provisional;
+  }
+
+  /**
+   * Checks whether the entries have been published without attachments, which are looked up in the background.
+   * 
+   * @return true, if the attachments still have to be resolved
+   */
+  public boolean isAttachmentsDeferred() {
+    return attachmentsDeferred;
+  }
+
+  public List<File> getLibRoots() {
+    return libRoots;
+  }
+
+  public LibraryScan getScan() {
+    return scan;
+  }
+
+  public DirectoryFingerprint getFingerprint() {
+    return fingerprint;
+  }
+
+  /**
+   * Returns the libraries the version policy dropped in favor of another version of the same artifact.
+   * 
+   * @return the collapsed libraries sorted by their paths
+   */
+  public List<ResolvedLibrary> getCollapsed() {
+    return collapsed;
+  }
+
+  /**
+   * Returns the entry created for a library by this snapshot, so that it can be reused if the library is unchanged.
+   * 
+   * @param library
+   *          the resolved library
+   * @return the entry or <code>null</code> if the library is not part of the snapshot or has been changed
+   */
+  public IClasspathEntry getEntry(ResolvedLibrary library) {
+    return entryMap.get(library);
+  }
+
+  /**
+   * Returns a copy of the resolved entries.
+   * 
+   * @return the entries
+   */
+  public IClasspathEntry[] getEntries() {
+    return entries.clone();
+  }
+
+  /**
+   * Checks whether another snapshot resolved to the same entries in the same order.
+   * 
+   * @param other
+   *          the other snapshot
+   * @return true, if publishing the other snapshot would not change the classpath
+   */
+  public boolean hasSameEntries(ContainerSnapshot other) {
+    return isSameClasspath(entries, other.entries);
+  }
+
+  /**
+   * Compares two lists of library entries by everything a dynamic classpath container sets: the path, the source
+   * attachment, the extra attributes such as the javadoc location and the export flag. As the entries are sorted by
+   * the resolution, the order has to be the same as well.
+   * 
+   * @param entries
+   *          the entries
+   * @param others
+   *          the entries to compare with, may be <code>null</code>
+   * @return true, if publishing the other entries instead would not change the classpath
+   */
+  public static boolean isSameClasspath(IClasspathEntry[] entries, IClasspathEntry[] others) {
+    if (entries == others) {
+      return true;
+    }
+    if (entries == null || others == null || entries.length != others.length) {
+      return false;
+    }
+
+    for (int i = 0; i < entries.length; i++) {
+      if (entries[i] != others[i] && !isSameEntry(entries[i], others[i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isSameEntry(IClasspathEntry entry, IClasspathEntry other) {
+    if (entry.getEntryKind() != other.getEntryKind() || entry.isExported() != other.isExported() || !entry.getPath().equals(other.getPath())) {
+      return false;
+    }
+
+    final IPath source = entry.getSourceAttachmentPath();
+    if (source == null ? other.getSourceAttachmentPath() != null : !source.equals(other.getSourceAttachmentPath())) {
+      return false;
+    }
+
+    final IClasspathAttribute[] attributes = entry.getExtraAttributes();
+    final IClasspathAttribute[] otherAttributes = other.getExtraAttributes();
+    if (attributes.length != otherAttributes.length) {
+      return false;
+    }
+    for (int i = 0; i < attributes.length; i++) {
+      if (!attributes[i].getName().equals(otherAttributes[i].getName()) || !attributes[i].getValue().equals(otherAttributes[i].getValue())) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
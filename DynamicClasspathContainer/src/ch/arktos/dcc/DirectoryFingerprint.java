@@ -0,0 +1,158 @@
+
+package ch.arktos.dcc;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * A cheap fingerprint of the library directories and their listed subdirectories, consisting of the modification time and
+ * the number of entries of every directory. Adding, removing or renaming a file changes the fingerprint of its
+ * directory, while checking the fingerprint only needs one stat and one listing without attributes per directory.
+ * <p>
+ * Files replaced in place with the same name are not detected, since this does not touch the directory. The archives
+ * which have been quarantined by the resolution are therefore added with their size and modification time, see
+ * {@link #withArchives(List)}, so that completing or replacing one of them is noticed.
+ */
+public class DirectoryFingerprint {
+
+  private static final long       MISSING = -1;
+
+  private final File[]            directories;
+  private final long[]            lastModified;
+  private final long[]            entryCounts;
+  private final List<LibraryFile> archives;
+
+  private DirectoryFingerprint(File[] directories, long[] lastModified, long[] entryCounts, List<LibraryFile> archives) {
+    this.directories = directories;
+    this.lastModified = lastModified;
+    this.entryCounts = entryCounts;
+    this.archives = archives;
+  }
+
+  /**
+   * Takes the fingerprint of the directories of a scan. The modification times are the ones read before the
+   * directories were listed, so changes made during the scan invalidate the fingerprint.
+   * 
+   * @param scan
+   *          the scan
+   * @return the fingerprint
+   */
+  public static DirectoryFingerprint of(LibraryScan scan) {
+    final List<LibraryFile> scanned = scan.getDirectories();
+    final List<File> missing = new ArrayList<File>();
+    for (File root : scan.getRoots()) {
+      if (!isScanned(scanned, root)) {
+        // remember the missing library directory, so that its creation is noticed
+        missing.add(root);
+      }
+    }
+
+    final int count = scanned.size() + missing.size();
+    final File[] directories = new File[count];
+    final long[] lastModified = new long[count];
+    final long[] entryCounts = new long[count];
+    for (int i = 0; i < scanned.size(); i++) {
+      final LibraryFile directory = scanned.get(i);
+      directories[i] = directory.getFile();
+      lastModified[i] = directory.getLastModified();
+      entryCounts[i] = scan.getEntryCount(directory.getFile());
+    }
+    for (int i = scanned.size(); i < count; i++) {
+      directories[i] = missing.get(i - scanned.size());
+      lastModified[i] = MISSING;
+      entryCounts[i] = MISSING;
+    }
+    return new DirectoryFingerprint(directories, lastModified, entryCounts, Collections.<LibraryFile> emptyList());
+  }
+
+  private static boolean isScanned(List<LibraryFile> scanned, File dir) {
+    for (LibraryFile directory : scanned) {
+      if (directory.getFile().equals(dir)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Takes a fresh fingerprint of the directories of a scan, e.g. after the scan has been patched with changes that
+   * were reported for the directories.
+   * 
+   * @param scan
+   *          the scan
+   * @return the fingerprint
+   */
+  public static DirectoryFingerprint current(LibraryScan scan) {
+    final DirectoryFingerprint fingerprint = of(scan);
+    for (int i = 0; i < fingerprint.directories.length; i++) {
+      final Path dir = fingerprint.directories[i].toPath();
+      fingerprint.lastModified[i] = getLastModified(dir);
+      fingerprint.entryCounts[i] = getEntryCount(dir);
+    }
+    return fingerprint;
+  }
+
+  /**
+   * Returns a fingerprint of the same directories which also covers the attributes of the given archives.
+   * 
+   * @param archives
+   *          the archives with the attributes they are expected to keep, e.g. the quarantined ones
+   * @return the fingerprint
+   */
+  public DirectoryFingerprint withArchives(List<LibraryFile> archives) {
+    if (archives.isEmpty() && this.archives.isEmpty()) {
+      return this;
+    }
+    return new DirectoryFingerprint(directories, lastModified, entryCounts, new ArrayList<LibraryFile>(archives));
+  }
+
+  /**
+   * Checks whether the directories still have the fingerprint.
+   * 
+   * @return true, if no directory and none of the archives has been modified since the fingerprint was taken
+   */
+  public boolean isCurrent() {
+    for (int i = 0; i < directories.length; i++) {
+      final Path dir = directories[i].toPath();
+      if (getLastModified(dir) != lastModified[i] || getEntryCount(dir) != entryCounts[i]) {
+        return false;
+      }
+    }
+    for (LibraryFile archive : archives) {
+      if (!archive.equals(LibraryFile.read(archive.getFile()))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static long getLastModified(Path dir) {
+    try {
+      return Files.getLastModifiedTime(dir).toMillis();
+    }
+    catch (IOException e) {
+      return MISSING;
+    }
+  }
+
+  private static long getEntryCount(Path dir) {
+    long count = 0;
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+      for (@SuppressWarnings("unused")
+      Path entry : stream) {
+        count++;
+      }
+    }
+    catch (IOException e) {
+      return MISSING;
+    }
+    return count;
+  }
+}
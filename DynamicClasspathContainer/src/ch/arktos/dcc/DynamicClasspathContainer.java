@@ -2,22 +2,28 @@
 package ch.arktos.dcc;
 
 import java.io.File;
-import java.io.FilenameFilter;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.eclipse.core.resources.IFolder;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.Path;
-import org.eclipse.jdt.core.IAccessRule;
+import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.jdt.core.IClasspathAttribute;
 import org.eclipse.jdt.core.IClasspathContainer;
 import org.eclipse.jdt.core.IClasspathEntry;
 import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.JavaCore;
 import org.eclipse.jdt.core.JavaModelException;
+import org.eclipse.osgi.util.NLS;
 
 
 /**
@@ -28,7 +34,22 @@ import org.eclipse.jdt.core.JavaModelException;
 public class DynamicClasspathContainer implements IClasspathContainer {
 
   /** The Constant ID. */
-  public final static String ID = "ch.arktos.dcc.DYNAMIC_CLASSPATH_CONTAINER";
+  public final static String ID                            = "ch.arktos.dcc.DYNAMIC_CLASSPATH_CONTAINER";
+
+  /** The separator of several library directories in the library directory segment. */
+  public final static String LIBRARY_DIR_SEPARATOR         = ";";
+
+  /** The system property enabling the expansion of the <code>Class-Path</code> manifest headers of the libraries. */
+  public final static String MANIFEST_CLASS_PATH_PROPERTY  = "ch.arktos.dcc.manifestClassPath";
+
+  /** The system property deferring the lookup of the attachments of a container to a background job. */
+  public final static String DEFERRED_ATTACHMENTS_PROPERTY = "ch.arktos.dcc.deferredAttachments";
+
+  private final static String VARIABLE_PREFIX              = "${";
+  private final static String VARIABLE_SUFFIX              = "}";
+
+  /** The resolutions currently running, by the sharing key of their library directories. */
+  private final static SingleFlight<String, ContainerSnapshot> RESOLUTIONS = new SingleFlight<String, ContainerSnapshot>();
 
   private final IPath        path;
 
@@ -38,6 +59,14 @@ public class DynamicClasspathContainer implements IClasspathContainer {
   private final String       srcRegex;
   private final String       docRegex;
   private final Boolean      isExported;
+  private final int          maxDepth;
+  private final String       excludeRegex;
+  private final VersionPolicy versionPolicy;
+
+  private final AtomicLong   cacheHits;
+  private final AtomicLong   cacheMisses;
+  private LibraryResolver    resolver;
+  private volatile ContainerSnapshot snapshot;
 
   /**
    * This constructor uses the provided IPath and IJavaProject arguments to
@@ -65,65 +94,671 @@ public class DynamicClasspathContainer implements IClasspathContainer {
     this.srcRegex = PathEncoder.decode(path.segment(5));
     this.docRegex = PathEncoder.decode(path.segment(6));
     this.isExported = Boolean.valueOf(PathEncoder.decode(path.segment(7)));
+    this.versionPolicy = getVersionPolicy(path);
+    final String maxDepthSegment = getOptionalSegment(path, 8);
+    this.maxDepth = maxDepthSegment != null ? getMaxDepth(maxDepthSegment) : 0;
+    final String excludeSegment = getOptionalSegment(path, 9);
+    this.excludeRegex = excludeSegment != null ? excludeSegment : "";
+    this.cacheHits = new AtomicLong();
+    this.cacheMisses = new AtomicLong();
+  }
+
+  private DynamicClasspathContainer(DynamicClasspathContainer container, ContainerSnapshot snapshot) {
+    this.path = container.path;
+    this.projectName = container.projectName;
+    this.libDir = container.libDir;
+    this.libRegex = container.libRegex;
+    this.srcRegex = container.srcRegex;
+    this.docRegex = container.docRegex;
+    this.isExported = container.isExported;
+    this.maxDepth = container.maxDepth;
+    this.excludeRegex = container.excludeRegex;
+    this.versionPolicy = container.versionPolicy;
+    this.resolver = container.resolver;
+    this.snapshot = snapshot;
+    // the published container replaces the given one, so its counters continue
+    this.cacheHits = new AtomicLong(container.cacheHits.get());
+    this.cacheMisses = new AtomicLong(container.cacheMisses.get());
   }
 
   @Override
   public IClasspathEntry[] getClasspathEntries() {
-    final ArrayList<IClasspathEntry> entryList = new ArrayList<IClasspathEntry>();
+    final List<File> libRoots = getLibraryRoots();
+    final ContainerSnapshot current = snapshot;
+    if (current != null && current.isCurrent(libRoots)) {
+      cacheHits.incrementAndGet();
+      ResolutionStats.count(ResolutionStats.Counter.CACHE_HITS);
+      return current.getEntries();
+    }
 
-    // retrieve library files
-    final IProject project = ResourcesPlugin.getWorkspace().getRoot().getProject(projectName);
-    if (project.exists()) {
-      final IFolder libFolder = project.getProject().getFolder(libDir);
-      if (libFolder.exists()) {
-        final File libFile = new File(libFolder.getLocationURI());
-        final File[] libraries = libFile.listFiles(new LibraryRegexFilter(libRegex));
-        if (libraries != null) {
-          for (File library : libraries) {
-
-            // retrieve source attachment for library
-            final Path src = getPathWithPart(library, srcRegex);
-
-            // retrieve javadoc attachment for library
-            final Path javadocPath = getPathWithPart(library, docRegex);
-            final IClasspathAttribute[] attribs = getJavadocAttibute(javadocPath);
-
-            entryList.add(JavaCore.newLibraryEntry(new Path(library.getAbsolutePath()), src, new Path("/"), new IAccessRule[] {}, attribs, isExported));
-          }
+    // another project may already have resolved the same library directory
+    final ContainerSnapshot shared = getSharedSnapshot(libRoots, current);
+    if (shared != null) {
+      cacheHits.incrementAndGet();
+      ResolutionStats.count(ResolutionStats.Counter.CACHE_HITS);
+      snapshot = shared;
+      return shared.getEntries();
+    }
+
+    cacheMisses.incrementAndGet();
+    ResolutionStats.count(ResolutionStats.Counter.CACHE_MISSES);
+    final ContainerSnapshot resolved = resolveOnce(libRoots, current);
+    snapshot = resolved;
+    if (resolved.isAttachmentsDeferred()) {
+      // the container has already been published, so it is not scheduled by its registration
+      final DynamicClasspathPlugin plugin = DynamicClasspathPlugin.getDefault();
+      if (plugin != null && plugin.getChangeListener() != null) {
+        plugin.getChangeListener().scheduleAttachments();
+      }
+    }
+    return resolved.getEntries();
+  }
+
+  /**
+   * Resolves the entries, unless a resolution of the same library directories with the same configuration is already
+   * running, in which case its result is awaited instead of scanning the directories again.
+   */
+  private ContainerSnapshot resolveOnce(final List<File> libRoots, final ContainerSnapshot current) {
+    if (libRoots == null) {
+      return resolve(null, current);
+    }
+
+    return RESOLUTIONS.run(getSharingKey(libRoots), new Callable<ContainerSnapshot>() {
+
+      @Override
+      public ContainerSnapshot call() {
+        // a resolution which finished in the meantime is as good as a new one
+        final ContainerSnapshot latest = snapshot;
+        if (latest != current && latest != null && latest.isCurrent(libRoots)) {
+          return latest;
+        }
+        final ContainerSnapshot shared = getSharedSnapshot(libRoots, current);
+        if (shared != null) {
+          return shared;
         }
+
+        final ContainerSnapshot resolved = resolve(libRoots, current);
+        share(libRoots, resolved);
+        return resolved;
+      }
+    });
+  }
+
+  /**
+   * Resolves the entries from disk, independent of the snapshot currently held by this container.
+   * 
+   * @param monitor
+   *          the progress monitor, may be <code>null</code>
+   * @return a new container holding the resolved entries
+   * @throws OperationCanceledException
+   *           if the monitor has been canceled
+   */
+  public DynamicClasspathContainer resolve(IProgressMonitor monitor) {
+    final SubMonitor progress = SubMonitor.convert(monitor, NLS.bind(Messages.ResolveJobName, getDescription()), 2);
+    final List<File> libRoots = getLibraryRoots();
+    if (libRoots == null) {
+      return new DynamicClasspathContainer(this, resolve(null, null));
+    }
+
+    final IProgressMonitor scanMonitor = progress.newChild(1);
+    final LibraryScan scan = LibraryScan.scan(libRoots, getScanDepth(), excludeRegex, new LibraryScan.Progress() {
+
+      @Override
+      public void scanning(File dir) {
+        scanMonitor.subTask(dir.getPath());
+      }
+
+      @Override
+      public boolean isCanceled() {
+        return scanMonitor.isCanceled();
+      }
+    });
+    if (progress.isCanceled()) {
+      throw new OperationCanceledException();
+    }
+
+    final ContainerSnapshot current = snapshot;
+    final ContainerSnapshot previous = current == null || current.isProvisional() ? null : current;
+    final ContainerSnapshot resolved = resolve(libRoots, scan, DirectoryFingerprint.of(scan), previous, previous == null && isAttachmentDeferral());
+    share(libRoots, resolved);
+    progress.worked(1);
+    return new DynamicClasspathContainer(this, resolved);
+  }
+
+  /**
+   * Creates a container that serves the given entries until it is replaced by a resolved one.
+   * 
+   * @param entries
+   *          the last known entries
+   * @return the provisional container
+   */
+  public DynamicClasspathContainer withProvisionalEntries(IClasspathEntry[] entries) {
+    return new DynamicClasspathContainer(this, ContainerSnapshot.provisional(entries));
+  }
+
+  /**
+   * Creates a container that serves the entries already resolved by a container of another project collecting the
+   * same library directory with the same configuration.
+   * 
+   * @param resolved
+   *          the resolved container
+   * @return the new container, or this container if the entries of the given one cannot be shared
+   */
+  public DynamicClasspathContainer withEntriesOf(DynamicClasspathContainer resolved) {
+    final ContainerSnapshot shared = resolved.snapshot;
+    final String sharingKey = getSharingKey();
+    if (shared == null || shared.isProvisional() || sharingKey == null || !sharingKey.equals(resolved.getSharingKey())) {
+      return this;
+    }
+    return new DynamicClasspathContainer(this, shared);
+  }
+
+  /**
+   * Checks whether this container serves provisional entries that still have to be resolved.
+   * 
+   * @return true, if the container has been created by {@link #withProvisionalEntries(IClasspathEntry[])}
+   */
+  public boolean isProvisional() {
+    final ContainerSnapshot current = snapshot;
+    return current != null && current.isProvisional();
+  }
+
+  /**
+   * Returns the entries this container has resolved so far, without touching the disk.
+   * 
+   * @return the entries or <code>null</code> if the container has not been resolved yet
+   */
+  public IClasspathEntry[] getResolvedEntries() {
+    final ContainerSnapshot current = snapshot;
+    return current == null ? null : current.getEntries();
+  }
+
+  /**
+   * Returns the scan the current entries have been resolved from, e.g. to persist it.
+   * 
+   * @return the scan or <code>null</code> if the container has not been resolved from a library directory yet
+   */
+  public LibraryScan getResolvedScan() {
+    final ContainerSnapshot current = snapshot;
+    return current == null ? null : current.getScan();
+  }
+
+  /**
+   * Restores a container from a persisted scan if the library directory has not changed since.
+   * 
+   * @param scan
+   *          the persisted scan
+   * @return a new container holding the entries resolved from the scan, or <code>null</code> if the scan is outdated
+   */
+  public DynamicClasspathContainer restore(LibraryScan scan) {
+    final List<File> libRoots = getLibraryRoots();
+    if (libRoots == null || !libRoots.equals(scan.getRoots()) || scan.getMaxDepth() != getScanDepth() || !scan.getExcludeRegex().equals(excludeRegex)) {
+      return null;
+    }
+
+    final DirectoryFingerprint fingerprint = DirectoryFingerprint.of(scan);
+    if (!fingerprint.isCurrent()) {
+      return null;
+    }
+
+    final ContainerSnapshot restored = resolve(libRoots, scan, fingerprint, null, isAttachmentDeferral());
+    share(libRoots, restored);
+    return new DynamicClasspathContainer(this, restored);
+  }
+
+  /**
+   * Resolves the entries of a persisted scan without touching the disk, regardless whether the scan is outdated.
+   * 
+   * @param scan
+   *          the persisted scan
+   * @return the entries
+   */
+  public IClasspathEntry[] getEntries(LibraryScan scan) {
+    return resolve(scan.getRoots(), scan, DirectoryFingerprint.of(scan), null).getEntries();
+  }
+
+  /**
+   * Drops the snapshot, so that the next call of {@link #getClasspathEntries()} resolves the entries from disk.
+   */
+  public void invalidate() {
+    snapshot = null;
+  }
+
+  /**
+   * Applies changes of single files in the library directory to the resolved entries. Only the attributes of the
+   * changed files are read, the directory is scanned again only if a subdirectory has been added or removed.
+   * 
+   * @param delta
+   *          the changes
+   * @return a new container holding the updated entries, or <code>null</code> if the entries did not change and there
+   *         is nothing to publish
+   */
+  public DynamicClasspathContainer update(LibraryDelta delta) {
+    final ContainerSnapshot current = snapshot;
+    if (current == null || current.isProvisional()) {
+      // not resolved yet, the changes will be picked up by the first resolution
+      return null;
+    }
+
+    // the delta may already have been applied by another project sharing the library directory
+    final List<File> libRoots = getLibraryRoots();
+    ContainerSnapshot updated = getSharedSnapshot(libRoots, current);
+    if (updated == null) {
+      final LibraryScan patchedScan = libRoots != null && libRoots.equals(current.getLibRoots()) ? current.getScan().patch(delta) : null;
+      if (patchedScan != null) {
+        updated = resolve(libRoots, patchedScan, DirectoryFingerprint.current(patchedScan), current);
+      }
+      else {
+        updated = resolve(libRoots, current);
+      }
+      share(libRoots, updated);
+    }
+
+    if (updated.hasSameEntries(current)) {
+      snapshot = updated;
+      return null;
+    }
+    return new DynamicClasspathContainer(this, updated);
+  }
+
+  /**
+   * Resolves the entries again from the current scan, e.g. after prebuilt indexes became available for some of the
+   * libraries or to add the deferred attachments. Entries which do not change are reused.
+   * 
+   * @return a new container holding the refreshed entries, or <code>null</code> if the entries did not change and
+   *         there is nothing to publish
+   */
+  public DynamicClasspathContainer refresh() {
+    final ContainerSnapshot current = snapshot;
+    if (current == null || current.isProvisional() || current.getScan() == null) {
+      return null;
+    }
+
+    // another project sharing the library directory may already have refreshed the entries
+    final List<File> libRoots = current.getLibRoots();
+    final ContainerSnapshot shared = getSharedSnapshot(libRoots, current);
+    final ContainerSnapshot base = shared != null ? shared : current;
+    ContainerSnapshot refreshed = resolve(libRoots, base.getScan(), base.getFingerprint(), base);
+    if (refreshed.hasSameEntries(base) && !base.isAttachmentsDeferred()) {
+      refreshed = base;
+    }
+    else {
+      share(libRoots, refreshed);
+    }
+
+    if (refreshed.hasSameEntries(current)) {
+      snapshot = refreshed;
+      return null;
+    }
+    return new DynamicClasspathContainer(this, refreshed);
+  }
+
+  /**
+   * Returns the libraries the version policy dropped in favor of another version of the same artifact.
+   * 
+   * @return the collapsed libraries sorted by their paths, empty if the container is not resolved yet
+   */
+  public List<ResolvedLibrary> getCollapsedLibraries() {
+    final ContainerSnapshot current = snapshot;
+    return current == null ? Collections.<ResolvedLibrary> emptyList() : current.getCollapsed();
+  }
+
+  /**
+   * Checks whether a file with the given name can change the entries of this container.
+   * 
+   * @param name
+   *          the file name
+   * @return true, if the file is a library or an attachment
+   */
+  public boolean isRelevant(String name) {
+    return getResolver().isRelevant(name);
+  }
+
+  /**
+   * Returns the key under which the resolved entries are shared with the containers of other projects. Containers
+   * collecting the same library directory with the same configuration have the same key.
+   * 
+   * @return the key or <code>null</code> if none of the library directories is available
+   */
+  public String getSharingKey() {
+    final List<File> libRoots = getLibraryRoots();
+    return libRoots == null ? null : getSharingKey(libRoots);
+  }
+
+  private String getSharingKey(List<File> libRoots) {
+    final StringBuilder location = new StringBuilder();
+    for (File libRoot : libRoots) {
+      if (location.length() > 0) {
+        location.append(File.pathSeparatorChar);
+      }
+      try {
+        location.append(libRoot.getCanonicalPath());
+      }
+      catch (IOException e) {
+        location.append(libRoot.getAbsolutePath());
       }
     }
-    return entryList.toArray(new IClasspathEntry[entryList.size()]);
+    return location.toString() + '\n' + libRegex + '\n' + srcRegex + '\n' + docRegex + '\n' + isExported + '\n' + maxDepth + '\n' + excludeRegex + '\n'
+        + (versionPolicy == null ? "" : versionPolicy.toSegment());
   }
 
-  private Path getPathWithPart(File library, String part) {
-    if (part == null || part.equals("")) {
+  /**
+   * Checks whether the libraries are collected from the subdirectories of the library directory as well.
+   * 
+   * @return true, if a maximum depth has been configured
+   */
+  public boolean isRecursive() {
+    return maxDepth > 0;
+  }
+
+  /**
+   * Returns the depth of the deepest subdirectories that are listed to collect libraries or attachments.
+   * 
+   * @return the configured maximum depth for recursive containers, otherwise 1 for the direct subdirectories that
+   *         may contain attachments
+   */
+  public int getScanDepth() {
+    return isRecursive() ? maxDepth : LibraryScan.DEFAULT_DEPTH;
+  }
+
+  /**
+   * Checks whether a subdirectory is excluded from the scan.
+   * 
+   * @param name
+   *          the directory name
+   * @return true, if the name matches the configured exclude pattern
+   */
+  public boolean isExcluded(String name) {
+    return !excludeRegex.isEmpty() && FileNameMatcher.compile(excludeRegex).matches(name);
+  }
+
+  /**
+   * Returns the version policy configured by the segment following the positional ones, which is identified by its
+   * {@link VersionPolicy#SEGMENT_PREFIX}.
+   */
+  private static VersionPolicy getVersionPolicy(IPath path) {
+    for (int i = 8; i < path.segmentCount(); i++) {
+      final VersionPolicy policy = VersionPolicy.parse(PathEncoder.decode(path.segment(i)));
+      if (policy != null) {
+        return policy;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns an optional positional segment, unless it is missing or already the version policy.
+   */
+  private static String getOptionalSegment(IPath path, int index) {
+    if (path.segmentCount() <= index) {
       return null;
     }
+    final String segment = PathEncoder.decode(path.segment(index));
+    return VersionPolicy.parse(segment) == null ? segment : null;
+  }
 
-    final String filePrefix = library.getName().substring(0, library.getName().lastIndexOf("."));
-    final FilenameFilter regexFilter = new AttachmentRegexFilter(".*".concat(filePrefix).concat(part));
-    final ArrayList<File> dirs = new ArrayList<>();
+  private static int getMaxDepth(String segment) {
+    try {
+      return Math.max(Integer.parseInt(segment), 0);
+    }
+    catch (NumberFormatException e) {
+      return 0;
+    }
+  }
 
-    final File libRoot = library.getParentFile();
-    dirs.add(libRoot);
-    dirs.addAll(Arrays.asList(libRoot.listFiles(new DirectoryFilter())));
+  /**
+   * Offers the resolved entries to the containers of other projects collecting the same library directory, unless
+   * they already share entries. This is used once the container has been published, as only snapshots of published
+   * containers are shared.
+   */
+  public void share() {
+    final ContainerSnapshot current = snapshot;
+    final DynamicClasspathPlugin plugin = DynamicClasspathPlugin.getDefault();
+    final List<File> libRoots = getLibraryRoots();
+    if (current == null || current.isProvisional() || plugin == null || libRoots == null) {
+      return;
+    }
 
-    Path resultPath = null;
-    for (File dir : dirs) {
-      final File[] matches = dir.listFiles(regexFilter);
-      if (matches != null && matches.length > 0) {
-        resultPath = new Path(matches[0].getAbsolutePath());
+    final String sharingKey = getSharingKey(libRoots);
+    if (plugin.getSharedCache().get(sharingKey) == null) {
+      plugin.getSharedCache().put(sharingKey, current);
+    }
+  }
+
+  private ContainerSnapshot getSharedSnapshot(List<File> libRoots, ContainerSnapshot current) {
+    final DynamicClasspathPlugin plugin = DynamicClasspathPlugin.getDefault();
+    if (plugin == null || libRoots == null) {
+      return null;
+    }
+
+    final ContainerSnapshot shared = plugin.getSharedCache().get(getSharingKey(libRoots));
+    return shared != null && shared != current && shared.isCurrent(libRoots) ? shared : null;
+  }
+
+  private void share(List<File> libRoots, ContainerSnapshot resolved) {
+    final DynamicClasspathPlugin plugin = DynamicClasspathPlugin.getDefault();
+    if (plugin != null && libRoots != null) {
+      plugin.getSharedCache().put(getSharingKey(libRoots), resolved);
+    }
+  }
+
+  /**
+   * Returns the workspace paths of the library directories inside the workspace.
+   * 
+   * @return the full paths of the library folders in the order of their priority
+   */
+  public List<IPath> getLibraryFolderPaths() {
+    final IProject project = ResourcesPlugin.getWorkspace().getRoot().getProject(projectName);
+    final List<IPath> paths = new ArrayList<IPath>();
+    for (String dir : getLibraryDirs(libDir)) {
+      if (!isExternal(dir)) {
+        paths.add(project.getFolder(dir).getFullPath());
+      }
+    }
+    return paths;
+  }
+
+  /**
+   * Splits the configured library directory into the list of library directories. Several directories are separated
+   * by {@link #LIBRARY_DIR_SEPARATOR}; a single directory is the format used before several were supported.
+   * 
+   * @param libDir
+   *          the library directory segment of the container path, decoded
+   * @return the project relative library directories in the order of their priority
+   */
+  public static List<String> getLibraryDirs(String libDir) {
+    final List<String> dirs = new ArrayList<String>();
+    for (String dir : libDir.split(LIBRARY_DIR_SEPARATOR)) {
+      if (dir.trim().length() > 0) {
+        dirs.add(dir.trim());
       }
     }
-    return resultPath;
+    return dirs;
+  }
+
+  /**
+   * Returns how many calls of {@link #getClasspathEntries()} have been answered from the cached snapshot.
+   * 
+   * @return the number of cache hits
+   */
+  public long getCacheHits() {
+    return cacheHits.get();
+  }
+
+  /**
+   * Returns how many calls of {@link #getClasspathEntries()} had to resolve the entries from disk.
+   * 
+   * @return the number of cache misses
+   */
+  public long getCacheMisses() {
+    return cacheMisses.get();
+  }
+
+  private List<File> getLibraryRoots() {
+    return getLibraryRoots(projectName, libDir);
   }
 
-  private IClasspathAttribute[] getJavadocAttibute(Path path) {
-    if (path == null) {
+  /**
+   * Returns the library directories of a container configuration which are available in the workspace.
+   * 
+   * @param projectName
+   *          the name of the project the project relative library directories belong to
+   * @param libDir
+   *          the library directory segment of the container path, decoded
+   * @return the library directories in the order of their priority, or <code>null</code> if none is available
+   */
+  public static List<File> getLibraryRoots(String projectName, String libDir) {
+    final IProject project = ResourcesPlugin.getWorkspace().getRoot().getProject(projectName);
+    final List<File> libRoots = new ArrayList<File>();
+    for (String dir : getLibraryDirs(libDir)) {
+      if (isExternal(dir)) {
+        // external directories are tracked even if they do not exist yet, so that their creation is noticed
+        final File externalRoot = getExternalRoot(dir);
+        if (externalRoot != null) {
+          libRoots.add(externalRoot);
+        }
+      }
+      else if (project.exists()) {
+        final IFolder libFolder = project.getProject().getFolder(dir);
+        if (libFolder.exists()) {
+          libRoots.add(new File(libFolder.getLocationURI()));
+        }
+      }
+    }
+    return libRoots.isEmpty() ? null : libRoots;
+  }
+
+  /**
+   * Returns the library directories outside of the workspace, which are not covered by resource deltas.
+   * 
+   * @return the external library directories in the order of their priority, whether they exist or not
+   */
+  public List<File> getExternalRoots() {
+    final List<File> externalRoots = new ArrayList<File>();
+    for (String dir : getLibraryDirs(libDir)) {
+      final File externalRoot = isExternal(dir) ? getExternalRoot(dir) : null;
+      if (externalRoot != null) {
+        externalRoots.add(externalRoot);
+      }
+    }
+    return externalRoots;
+  }
+
+  /**
+   * Checks whether a library directory lies outside of the workspace. External directories start with a classpath
+   * variable, e.g. <code>${ARTIFACT_CACHE}/libs</code>, or are absolute file system paths. A path with a leading
+   * slash has always denoted a folder of the project, e.g. <code>/lib</code>, and still does, so on platforms whose
+   * absolute paths start with a slash, external directories are given through a classpath variable.
+   * 
+   * @param dir
+   *          the configured library directory
+   * @return true, if the directory is not relative to the project
+   */
+  public static boolean isExternal(String dir) {
+    return dir.startsWith(VARIABLE_PREFIX) || new File(dir).isAbsolute() && !dir.startsWith("/");
+  }
+
+  private static File getExternalRoot(String dir) {
+    if (!dir.startsWith(VARIABLE_PREFIX)) {
+      return new File(dir);
+    }
+
+    final int end = dir.indexOf(VARIABLE_SUFFIX);
+    final IPath variable = end < 0 ? null : JavaCore.getClasspathVariable(dir.substring(VARIABLE_PREFIX.length(), end));
+    if (variable == null) {
       return null;
     }
-    return new IClasspathAttribute[] {JavaCore.newClasspathAttribute("javadoc_location", path.toFile().toURI().toString())};
+    return new File(variable.toFile(), dir.substring(end + VARIABLE_SUFFIX.length()));
+  }
+
+  /**
+   * Checks whether the entries held by this container still reflect the library directories, by comparing the
+   * fingerprint of the scanned directories.
+   * 
+   * @return true, if the container has been resolved and no listed directory has been modified since
+   */
+  public boolean isUpToDate() {
+    final ContainerSnapshot current = snapshot;
+    return current != null && !current.isProvisional() && current.isCurrent(getLibraryRoots());
+  }
+
+  /**
+   * Checks whether the entries have been published without attachments, which still have to be resolved.
+   * 
+   * @return true, if the attachments are deferred
+   */
+  public boolean isAttachmentsDeferred() {
+    final ContainerSnapshot current = snapshot;
+    return current != null && current.isAttachmentsDeferred();
+  }
+
+  private static boolean isAttachmentDeferral() {
+    return Boolean.getBoolean(DEFERRED_ATTACHMENTS_PROPERTY);
+  }
+
+  private LibraryResolver getResolver() {
+    if (resolver == null) {
+      resolver = new LibraryResolver(libRegex, srcRegex, docRegex, isRecursive(), versionPolicy, Boolean.getBoolean(MANIFEST_CLASS_PATH_PROPERTY));
+    }
+    return resolver;
+  }
+
+  private ContainerSnapshot resolve(List<File> libRoots, ContainerSnapshot previous) {
+    if (libRoots == null) {
+      return new ContainerSnapshot(null, null, null, Collections.<ResolvedLibrary> emptyList(), new IClasspathEntry[0]);
+    }
+
+    // retrieve library files
+    final LibraryScan scan = LibraryScan.scan(libRoots, getScanDepth(), excludeRegex, null);
+    return resolve(libRoots, scan, DirectoryFingerprint.of(scan), previous, previous == null && isAttachmentDeferral());
+  }
+
+  private ContainerSnapshot resolve(List<File> libRoots, LibraryScan scan, DirectoryFingerprint fingerprint, ContainerSnapshot previous) {
+    return resolve(libRoots, scan, fingerprint, previous, false);
+  }
+
+  /**
+   * Resolves the entries of a scan. If the attachments are deferred, the entries are created without source and
+   * javadoc attachments, which are added by a later resolution, see {@link #refresh()}.
+   */
+  private ContainerSnapshot resolve(List<File> libRoots, LibraryScan scan, DirectoryFingerprint fingerprint, ContainerSnapshot previous, boolean deferAttachments) {
+    final List<ResolvedLibrary> collapsed = new ArrayList<ResolvedLibrary>();
+    final List<ResolvedLibrary> libraries = getResolver().resolve(scan, collapsed, !deferAttachments);
+    final long start = ResolutionStats.start();
+    final IClasspathEntry[] entries = new IClasspathEntry[libraries.size()];
+    for (int i = 0; i < entries.length; i++) {
+      final ResolvedLibrary library = libraries.get(i);
+
+      // reuse the entry of an unchanged library, unless its prebuilt index became available
+      final String indexLocation = getIndexLocation(library);
+      entries[i] = previous == null ? null : previous.getEntry(library);
+      if (entries[i] == null || !isSameIndexLocation(entries[i], indexLocation)) {
+        entries[i] = EntryInterner.newLibraryEntry(library, indexLocation, isExported);
+      }
+    }
+    final long duration = ResolutionStats.stop(ResolutionStats.Phase.ENTRIES, start);
+    if (DynamicClasspathPlugin.isTracing()) {
+      DynamicClasspathPlugin.trace("Resolved " + projectName + '/' + libDir + ": " + entries.length + " libraries, " + collapsed.size() + " collapsed"
+          + (deferAttachments ? ", attachments deferred" : "") + ", entries created in " + duration / 1000 + " us");
+    }
+    // the quarantined archives can be completed or replaced without touching their directory
+    final DirectoryFingerprint current = fingerprint.withArchives(ArchiveValidator.getQuarantined(scan));
+    return new ContainerSnapshot(libRoots, scan, current, libraries, entries, collapsed, deferAttachments);
+  }
+
+  private static String getIndexLocation(ResolvedLibrary library) {
+    final DynamicClasspathPlugin plugin = DynamicClasspathPlugin.getDefault();
+    final PrebuiltIndexStore indexStore = plugin == null ? null : plugin.getIndexStore();
+    return indexStore == null ? null : indexStore.getIndexLocation(library.getLibrary());
+  }
+
+  private static boolean isSameIndexLocation(IClasspathEntry entry, String indexLocation) {
+    for (IClasspathAttribute attrib : entry.getExtraAttributes()) {
+      if (attrib.getName().equals(IClasspathAttribute.INDEX_LOCATION_ATTRIBUTE_NAME)) {
+        return attrib.getValue().equals(indexLocation);
+      }
+    }
+    return indexLocation == null;
   }
 
   /*
@@ -134,7 +769,21 @@ public class DynamicClasspathContainer implements IClasspathContainer {
   @Override
   public String getDescription() {
     final IPath projectPath = new Path(projectName);
-    return projectPath.append(libDir).toPortableString();
+    String description = projectPath.append(libDir).toPortableString();
+    final int collapsed = getCollapsedLibraries().size();
+    if (collapsed > 0) {
+      description = NLS.bind(Messages.CollapsedDesc, description, collapsed);
+    }
+
+    // the explorer filter only shows the first libraries of a large container, the property is read here so that
+    // the UI class is not loaded
+    final ContainerSnapshot current = snapshot;
+    final int libraries = current == null ? 0 : current.getEntries().length;
+    final int limit = Integer.getInteger(DynamicClasspathContainerViewerFilter.LIMIT_PROPERTY, 0);
+    if (limit > 0 && libraries > limit) {
+      description = NLS.bind(Messages.TruncatedDesc, new Object[] {description, limit, libraries});
+    }
+    return description;
   }
 
   /*
@@ -1,14 +1,28 @@
 
 package ch.arktos.dcc;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.jdt.core.ClasspathContainerInitializer;
-import org.eclipse.jdt.core.IClasspathContainer;
+import org.eclipse.jdt.core.IClasspathEntry;
 import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.JavaModelException;
 
 
 /**
@@ -18,9 +32,18 @@ import org.eclipse.jdt.core.JavaCore;
  */
 public class DynamicClasspathContainerInitializer extends ClasspathContainerInitializer {
 
+  /** The system property enabling the asynchronous resolution. */
+  public final static String     ASYNC_RESOLUTION_PROPERTY     = "ch.arktos.dcc.asyncResolution";
+
+  /** The system property disabling the batched initialization of all projects. */
+  public final static String     BATCH_INITIALIZATION_PROPERTY = "ch.arktos.dcc.batchInitialization";
+
   /** The monitor. */
   private final IProgressMonitor monitor;
 
+  /** Whether the containers of all projects still have to be initialized together. */
+  private final AtomicBoolean    batchPending                  = new AtomicBoolean(true);
+
   /**
    * Instantiates a new dynamic classpath container initializer.
    */
@@ -37,8 +60,193 @@ public class DynamicClasspathContainerInitializer extends ClasspathContainerInit
    */
   @Override
   public void initialize(IPath containerPath, IJavaProject project) throws CoreException {
-    final DynamicClasspathContainer container = new DynamicClasspathContainer(containerPath, project);
-    JavaCore.setClasspathContainer(containerPath, new IJavaProject[] {project}, new IClasspathContainer[] {container}, monitor);
+    final LibraryChangeListener listener = DynamicClasspathPlugin.getDefault().getChangeListener();
+    if (isBatch() && batchPending.compareAndSet(true, false) && initializeAll(listener, containerPath, project)) {
+      return;
+    }
+
+    final DynamicClasspathContainer container = prepare(listener, new DynamicClasspathContainer(containerPath, project), project);
+    listener.initialize(project, container, monitor);
+    if (container.isProvisional()) {
+      new ContainerResolveJob(listener, project, container).schedule();
+    }
+  }
+
+  /**
+   * Creates the container to be published first. The container is restored from the scan persisted by the last session
+   * if the library directory did not change since. Otherwise, the container is resolved on first access or, with the
+   * asynchronous resolution, serves the last known entries until it has been resolved in the background.
+   */
+  private static DynamicClasspathContainer prepare(LibraryChangeListener listener, DynamicClasspathContainer container, IJavaProject project) {
+    final LibraryScan persisted = DynamicClasspathPlugin.getDefault().getSnapshotStore().load(LibraryChangeListener.getKey(project, container.getPath()));
+    final DynamicClasspathContainer restored = persisted == null ? null : container.restore(persisted);
+    if (restored != null) {
+      return restored;
+    }
+    if (!isAsync()) {
+      return container;
+    }
+
+    final DynamicClasspathContainer previous = listener.getContainer(project, container.getPath());
+    IClasspathEntry[] lastEntries = previous == null ? null : previous.getResolvedEntries();
+    if (lastEntries == null && persisted != null) {
+      lastEntries = container.getEntries(persisted);
+    }
+    return container.withProvisionalEntries(lastEntries == null ? new IClasspathEntry[0] : lastEntries);
+  }
+
+  /**
+   * Initializes the containers of all open projects at once, which is requested for the first container after the
+   * workspace has been opened. The library directories that are not restored are resolved in parallel, once per
+   * distinct directory and configuration, and the containers are published with one call per container path.
+   * 
+   * @return true, if the container of the requesting project has been published
+   */
+  private boolean initializeAll(LibraryChangeListener listener, IPath requestedPath, IJavaProject requestedProject) {
+    final Map<IPath, List<IJavaProject>> projects = new LinkedHashMap<IPath, List<IJavaProject>>();
+    final Map<IPath, List<DynamicClasspathContainer>> containers = new LinkedHashMap<IPath, List<DynamicClasspathContainer>>();
+    final Map<String, DynamicClasspathContainer> unresolved = new LinkedHashMap<String, DynamicClasspathContainer>();
+    for (IJavaProject project : getJavaProjects()) {
+      for (IPath containerPath : getContainerPaths(project)) {
+        if (listener.getContainer(project, containerPath) != null && !(project.equals(requestedProject) && containerPath.equals(requestedPath))) {
+          continue;
+        }
+
+        final DynamicClasspathContainer container;
+        try {
+          container = prepare(listener, new DynamicClasspathContainer(containerPath, project), project);
+        }
+        catch (JavaModelException e) {
+          continue;
+        }
+        final String sharingKey = container.getResolvedEntries() == null ? container.getSharingKey() : null;
+        if (sharingKey != null && !unresolved.containsKey(sharingKey)) {
+          unresolved.put(sharingKey, container);
+        }
+        if (!projects.containsKey(containerPath)) {
+          projects.put(containerPath, new ArrayList<IJavaProject>());
+          containers.put(containerPath, new ArrayList<DynamicClasspathContainer>());
+        }
+        projects.get(containerPath).add(project);
+        containers.get(containerPath).add(container);
+      }
+    }
+
+    resolveAll(unresolved.values());
+
+    boolean requestedPublished = false;
+    for (Map.Entry<IPath, List<IJavaProject>> group : projects.entrySet()) {
+      final IPath containerPath = group.getKey();
+      final IJavaProject[] groupProjects = group.getValue().toArray(new IJavaProject[group.getValue().size()]);
+      final DynamicClasspathContainer[] groupContainers = containers.get(containerPath).toArray(new DynamicClasspathContainer[groupProjects.length]);
+      for (int i = 0; i < groupContainers.length; i++) {
+        // containers of the same library directory serve the entries resolved once for all of them
+        final DynamicClasspathContainer resolved = groupContainers[i].getResolvedEntries() == null ? unresolved.get(groupContainers[i].getSharingKey()) : null;
+        if (resolved != null) {
+          groupContainers[i] = groupContainers[i].withEntriesOf(resolved);
+        }
+      }
+
+      try {
+        listener.initialize(containerPath, groupProjects, groupContainers, monitor);
+      }
+      catch (JavaModelException e) {
+        // the containers are initialized one by one when they are requested
+        continue;
+      }
+      for (int i = 0; i < groupProjects.length; i++) {
+        if (groupContainers[i].isProvisional()) {
+          new ContainerResolveJob(listener, groupProjects[i], groupContainers[i]).schedule();
+        }
+        requestedPublished |= groupProjects[i].equals(requestedProject) && containerPath.equals(requestedPath);
+      }
+    }
+    return requestedPublished;
+  }
+
+  /**
+   * Resolves the given containers in parallel, using one thread per processor.
+   */
+  private static void resolveAll(Collection<DynamicClasspathContainer> containers) {
+    if (containers.isEmpty()) {
+      return;
+    }
+
+    final ExecutorService executor = Executors.newFixedThreadPool(Math.min(containers.size(), Runtime.getRuntime().availableProcessors()));
+    try {
+      final List<Future<IClasspathEntry[]>> results = new ArrayList<Future<IClasspathEntry[]>>(containers.size());
+      for (final DynamicClasspathContainer container : containers) {
+        results.add(executor.submit(new Callable<IClasspathEntry[]>() {
+
+          @Override
+          public IClasspathEntry[] call() {
+            return container.getClasspathEntries();
+          }
+        }));
+      }
+      for (Future<IClasspathEntry[]> result : results) {
+        try {
+          result.get();
+        }
+        catch (ExecutionException e) {
+          // the container is resolved again on first access
+        }
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    finally {
+      executor.shutdown();
+    }
+  }
+
+  private static IJavaProject[] getJavaProjects() {
+    try {
+      return JavaCore.create(ResourcesPlugin.getWorkspace().getRoot()).getJavaProjects();
+    }
+    catch (JavaModelException e) {
+      return new IJavaProject[0];
+    }
+  }
+
+  private static List<IPath> getContainerPaths(IJavaProject project) {
+    final List<IPath> paths = new ArrayList<IPath>();
+    if (!project.getProject().isOpen()) {
+      return paths;
+    }
+
+    try {
+      for (IClasspathEntry entry : project.getRawClasspath()) {
+        if (entry.getEntryKind() == IClasspathEntry.CPE_CONTAINER && entry.getPath().segmentCount() > 0 && DynamicClasspathContainer.ID.equals(entry.getPath().segment(0))) {
+          paths.add(entry.getPath());
+        }
+      }
+    }
+    catch (JavaModelException e) {
+      // the container of the project is initialized when it is requested
+    }
+    return paths;
+  }
+
+  /**
+   * Checks whether the containers of all projects are initialized together. This is the default and can be disabled
+   * by setting the system property <code>ch.arktos.dcc.batchInitialization</code> to <code>false</code>.
+   * 
+   * @return true, if the first initialization initializes the containers of all open projects
+   */
+  public static boolean isBatch() {
+    return Boolean.parseBoolean(System.getProperty(BATCH_INITIALIZATION_PROPERTY, "true"));
+  }
+
+  /**
+   * Checks whether containers are resolved in the background. This is enabled with the system property
+   * <code>ch.arktos.dcc.asyncResolution</code>.
+   * 
+   * @return true, if the initialization publishes provisional containers
+   */
+  public static boolean isAsync() {
+    return Boolean.getBoolean(ASYNC_RESOLUTION_PROPERTY);
   }
 
   /*
@@ -50,6 +258,21 @@ public class DynamicClasspathContainerInitializer extends ClasspathContainerInit
    */
   @Override
   public Object getComparisonID(IPath containerPath, IJavaProject project) {
+    // containers of different projects collecting the same library directory are the same, the key of a published
+    // container has been computed already and is renewed whenever it is published again
+    final String published = DynamicClasspathPlugin.getDefault().getChangeListener().getSharingKey(project, containerPath);
+    if (published != null) {
+      return published;
+    }
+
+    try {
+      final String sharingKey = new DynamicClasspathContainer(containerPath, project).getSharingKey();
+      if (sharingKey != null) {
+        return sharingKey;
+      }
+    }
+    catch (JavaModelException e) {
+    }
     return containerPath;
   }
 }
@@ -1,6 +1,8 @@
 
 package ch.arktos.dcc;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.regex.Pattern;
 
 import org.eclipse.core.resources.IFolder;
@@ -21,20 +23,30 @@ import org.eclipse.jdt.ui.wizards.IClasspathContainerPageExtension;
 import org.eclipse.jface.viewers.ILabelProvider;
 import org.eclipse.jface.window.Window;
 import org.eclipse.jface.wizard.WizardPage;
+import org.eclipse.osgi.util.NLS;
 import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.ModifyEvent;
+import org.eclipse.swt.events.ModifyListener;
 import org.eclipse.swt.events.SelectionAdapter;
 import org.eclipse.swt.events.SelectionEvent;
 import org.eclipse.swt.layout.GridData;
 import org.eclipse.swt.layout.GridLayout;
 import org.eclipse.swt.widgets.Button;
 import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Event;
 import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Listener;
+import org.eclipse.swt.widgets.Table;
+import org.eclipse.swt.widgets.TableColumn;
+import org.eclipse.swt.widgets.TableItem;
 import org.eclipse.swt.widgets.Text;
 import org.eclipse.ui.dialogs.ElementListSelectionDialog;
 
 
 /**
- * The Class DynamicClasspathContainerPage.
+ * The Class DynamicClasspathContainerPage. The libraries matched by the configuration and their attachments are
+ * previewed while it is edited, see {@link MatchPreviewJob}.
  * 
  * @author killert
  */
@@ -49,6 +61,8 @@ public class DynamicClasspathContainerPage extends WizardPage implements IClassp
   private final static String  DEFAULT_SRC_REGEX   = ".*(-sources|-src)\\.(jar|zip)";
   private final static String  DEFAULT_DOC_REGEX   = ".*(-javadoc|-doc)\\.(jar|zip)";
   private final static boolean DEFAULT_IS_EXPORTED = true;
+  private final static int     DEFAULT_MAX_DEPTH   = 3;
+  private final static long    PREVIEW_DELAY       = 300;
 
   private IClasspathEntry      classpathEntry;
   private IJavaProject         project;
@@ -59,6 +73,18 @@ public class DynamicClasspathContainerPage extends WizardPage implements IClassp
   private Text                 srcRegexText;
   private Text                 docRegexText;
   private Button               exportedBox;
+  private Button               recursiveBox;
+  private Text                 maxDepthText;
+  private Text                 excludeRegexText;
+  private Button               collapseBox;
+  private Text                 pinsText;
+  private Label                previewStatus;
+  private Table                previewTable;
+  private MatchPreviewJob      previewJob;
+
+  // the last previewed configuration and its libraries, only accessed in the UI thread
+  private MatchPreviewJob.Request previewRequest;
+  private List<ResolvedLibrary>   previewLibraries = Collections.emptyList();
 
   /**
    * Default Constructor - sets title, page name, description.
@@ -102,9 +128,21 @@ public class DynamicClasspathContainerPage extends WizardPage implements IClassp
     createLibRegexGroup(composite);
     createSrcRegexGroup(composite);
     createDocRegexGroup(composite);
+    createRecursiveGroup(composite);
+    createVersionGroup(composite);
     createExportedGroup(composite);
+    createPreviewGroup(composite);
 
     setControl(composite);
+    updatePreview();
+  }
+
+  @Override
+  public void dispose() {
+    if (previewJob != null) {
+      previewJob.cancel();
+    }
+    super.dispose();
   }
 
   /*
@@ -125,6 +163,9 @@ public class DynamicClasspathContainerPage extends WizardPage implements IClassp
     libRegexText.setText(libRegexText.getText().trim());
     srcRegexText.setText(srcRegexText.getText().trim());
     docRegexText.setText(docRegexText.getText().trim());
+    maxDepthText.setText(maxDepthText.getText().trim());
+    excludeRegexText.setText(excludeRegexText.getText().trim());
+    pinsText.setText(pinsText.getText().trim());
 
     final IProject project = ResourcesPlugin.getWorkspace().getRoot().getProject(projectLabel.getText());
     if (!project.exists()) {
@@ -135,10 +176,16 @@ public class DynamicClasspathContainerPage extends WizardPage implements IClassp
       setErrorMessage(Messages.BinDirErr);
       return false;
     }
-    if (!createProjectFolder(project, libDirText.getText())) {
+    if (DynamicClasspathContainer.getLibraryDirs(libDirText.getText()).isEmpty()) {
       setErrorMessage(Messages.LibDirErr);
       return false;
     }
+    for (String libDir : DynamicClasspathContainer.getLibraryDirs(libDirText.getText())) {
+      if (!DynamicClasspathContainer.isExternal(libDir) && !createProjectFolder(project, libDir)) {
+        setErrorMessage(Messages.LibDirErr);
+        return false;
+      }
+    }
     if (!isRegexValid(libRegexText.getText())) {
       setErrorMessage(Messages.LibRegexErr);
       return false;
@@ -151,6 +198,14 @@ public class DynamicClasspathContainerPage extends WizardPage implements IClassp
       setErrorMessage(Messages.DocRegexErr);
       return false;
     }
+    if (recursiveBox.getSelection() && getMaxDepth() < 1) {
+      setErrorMessage(Messages.MaxDepthErr);
+      return false;
+    }
+    if (recursiveBox.getSelection() && !isRegexValid(excludeRegexText.getText())) {
+      setErrorMessage(Messages.ExcludeRegexErr);
+      return false;
+    }
     return true;
   }
 
@@ -182,6 +237,16 @@ public class DynamicClasspathContainerPage extends WizardPage implements IClassp
     path = path.append(PathEncoder.encode(srcRegexText.getText())); // 5
     path = path.append(PathEncoder.encode(docRegexText.getText())); // 6
     path = path.append(PathEncoder.encode(Boolean.toString(exportedBox.getSelection()))); // 7
+    if (recursiveBox.getSelection()) {
+      path = path.append(PathEncoder.encode(Integer.toString(getMaxDepth()))); // 8
+      if (excludeRegexText.getText().length() > 0) {
+        path = path.append(PathEncoder.encode(excludeRegexText.getText())); // 9
+      }
+    }
+    if (collapseBox.getSelection()) {
+      final VersionPolicy versionPolicy = new VersionPolicy(VersionPolicy.getPins(pinsText.getText()));
+      path = path.append(PathEncoder.encode(versionPolicy.toSegment())); // last, identified by its prefix
+    }
 
     final IPath binPath = new Path(projectLabel.getText()).append(binDirText.getText());
     final IClasspathAttribute attribute = JavaCore.newClasspathAttribute(PREFIX_BINARY_PATH, binPath.toString());
@@ -235,6 +300,7 @@ public class DynamicClasspathContainerPage extends WizardPage implements IClassp
           final IJavaProject javaProject = getJavaProject();
           if (javaProject != null) {
             projectLabel.setText(javaProject.getElementName());
+            updatePreview();
           }
         }
 
@@ -374,6 +440,139 @@ public class DynamicClasspathContainerPage extends WizardPage implements IClassp
     docRegexText.setLayoutData(new GridData(GridData.HORIZONTAL_ALIGN_FILL));
   }
 
+  /**
+   * Creates the check box for collecting libraries from subdirectories, with the depth and the exclude pattern
+   * 
+   * @param parent
+   *          parent widget
+   */
+  private void createRecursiveGroup(final Composite parent) {
+    boolean recursive = false;
+    String maxDepth = Integer.toString(DEFAULT_MAX_DEPTH);
+    String excludeRegex = "";
+    if (getOptionalSegment(8) != null) {
+      recursive = true;
+      maxDepth = getOptionalSegment(8);
+      if (getOptionalSegment(9) != null) {
+        excludeRegex = getOptionalSegment(9);
+      }
+    }
+
+    Label label = new Label(parent, SWT.NONE);
+    label.setLayoutData(new GridData(GridData.HORIZONTAL_ALIGN_FILL));
+
+    this.recursiveBox = new Button(parent, SWT.CHECK);
+    recursiveBox.setText(Messages.RecursiveLabel);
+    recursiveBox.setLayoutData(new GridData(GridData.HORIZONTAL_ALIGN_FILL));
+    recursiveBox.setSelection(recursive);
+    recursiveBox.addSelectionListener(new SelectionAdapter() {
+
+      @Override
+      public void widgetSelected(SelectionEvent event) {
+        updateRecursiveGroup();
+        updatePreview();
+      }
+
+    });
+
+    label = new Label(parent, SWT.NONE);
+    label.setLayoutData(new GridData(GridData.HORIZONTAL_ALIGN_FILL));
+    label.setText(Messages.MaxDepthLabel);
+
+    this.maxDepthText = new Text(parent, SWT.SINGLE | SWT.BORDER | SWT.FILL);
+    maxDepthText.setText(maxDepth);
+    maxDepthText.setLayoutData(new GridData(GridData.HORIZONTAL_ALIGN_FILL));
+
+    label = new Label(parent, SWT.NONE);
+    label.setLayoutData(new GridData(GridData.HORIZONTAL_ALIGN_FILL));
+    label.setText(Messages.ExcludeRegexLabel);
+
+    this.excludeRegexText = new Text(parent, SWT.SINGLE | SWT.BORDER | SWT.FILL);
+    excludeRegexText.setText(excludeRegex);
+    excludeRegexText.setLayoutData(new GridData(GridData.HORIZONTAL_ALIGN_FILL));
+
+    updateRecursiveGroup();
+  }
+
+  private void updateRecursiveGroup() {
+    maxDepthText.setEnabled(recursiveBox.getSelection());
+    excludeRegexText.setEnabled(recursiveBox.getSelection());
+  }
+
+  /**
+   * Creates the check box for collapsing several versions of the same artifact, with the pinned versions
+   * 
+   * @param parent
+   *          parent widget
+   */
+  private void createVersionGroup(final Composite parent) {
+    final VersionPolicy versionPolicy = getVersionPolicy();
+    final StringBuilder pins = new StringBuilder();
+    if (versionPolicy != null) {
+      for (String pin : versionPolicy.getPins()) {
+        pins.append(pins.length() > 0 ? VersionPolicy.PIN_SEPARATOR + " " : "").append(pin);
+      }
+    }
+
+    Label label = new Label(parent, SWT.NONE);
+    label.setLayoutData(new GridData(GridData.HORIZONTAL_ALIGN_FILL));
+
+    this.collapseBox = new Button(parent, SWT.CHECK);
+    collapseBox.setText(Messages.CollapseLabel);
+    collapseBox.setLayoutData(new GridData(GridData.HORIZONTAL_ALIGN_FILL));
+    collapseBox.setSelection(versionPolicy != null);
+    collapseBox.addSelectionListener(new SelectionAdapter() {
+
+      @Override
+      public void widgetSelected(SelectionEvent event) {
+        pinsText.setEnabled(collapseBox.getSelection());
+        updatePreview();
+      }
+
+    });
+
+    label = new Label(parent, SWT.NONE);
+    label.setLayoutData(new GridData(GridData.HORIZONTAL_ALIGN_FILL));
+    label.setText(Messages.PinsLabel);
+
+    this.pinsText = new Text(parent, SWT.SINGLE | SWT.BORDER | SWT.FILL);
+    pinsText.setText(pins.toString());
+    pinsText.setLayoutData(new GridData(GridData.HORIZONTAL_ALIGN_FILL));
+    pinsText.setEnabled(collapseBox.getSelection());
+  }
+
+  private VersionPolicy getVersionPolicy() {
+    if (classpathEntry != null) {
+      for (int i = 8; i < classpathEntry.getPath().segmentCount(); i++) {
+        final VersionPolicy versionPolicy = VersionPolicy.parse(PathEncoder.decode(classpathEntry.getPath().segment(i)));
+        if (versionPolicy != null) {
+          return versionPolicy;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns an optional positional segment of the edited entry, unless it is missing or already the version policy.
+   */
+  private String getOptionalSegment(int index) {
+    if (classpathEntry == null || classpathEntry.getPath().segmentCount() <= index) {
+      return null;
+    }
+    final String segment = PathEncoder.decode(classpathEntry.getPath().segment(index));
+    return VersionPolicy.parse(segment) == null ? segment : null;
+  }
+
+  private int getMaxDepth() {
+    try {
+      return Integer.parseInt(maxDepthText.getText());
+    }
+    catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+
   /**
    * Creates the regular expression label and text box
    * 
@@ -395,6 +594,160 @@ public class DynamicClasspathContainerPage extends WizardPage implements IClassp
     exportedBox.setSelection(isexported);
   }
 
+  /**
+   * Creates the table previewing the matched libraries and their attachments. The table is virtual, so only the
+   * visible rows are filled, and it is updated whenever a setting affecting the matched libraries is changed.
+   * 
+   * @param parent
+   *          parent widget
+   */
+  private void createPreviewGroup(final Composite parent) {
+    final Label label = new Label(parent, SWT.NONE);
+    label.setLayoutData(new GridData(GridData.HORIZONTAL_ALIGN_FILL));
+    label.setText(Messages.PreviewLabel);
+
+    this.previewStatus = new Label(parent, SWT.NONE);
+    previewStatus.setLayoutData(new GridData(GridData.HORIZONTAL_ALIGN_FILL));
+
+    this.previewTable = new Table(parent, SWT.BORDER | SWT.VIRTUAL | SWT.FULL_SELECTION | SWT.V_SCROLL | SWT.H_SCROLL);
+    previewTable.setHeaderVisible(true);
+    previewTable.setLinesVisible(true);
+    final GridData layoutData = new GridData(GridData.FILL_BOTH);
+    layoutData.horizontalSpan = 2;
+    layoutData.heightHint = 150;
+    previewTable.setLayoutData(layoutData);
+    final String[] columns = {Messages.PreviewLibraryColumn, Messages.PreviewSourceColumn, Messages.PreviewJavadocColumn};
+    for (int i = 0; i < columns.length; i++) {
+      final TableColumn column = new TableColumn(previewTable, SWT.LEFT);
+      column.setText(columns[i]);
+      column.setWidth(i == 0 ? 250 : 200);
+    }
+    previewTable.addListener(SWT.SetData, new Listener() {
+
+      @Override
+      public void handleEvent(Event event) {
+        final ResolvedLibrary library = previewLibraries.get(event.index);
+        ((TableItem)event.item).setText(new String[] {library.getLibrary().getName(), getName(library.getSource()), getName(library.getJavadoc())});
+      }
+
+    });
+
+    final Display display = parent.getDisplay();
+    this.previewJob = new MatchPreviewJob(new MatchPreviewJob.Listener() {
+
+      @Override
+      public void previewed(final MatchPreviewJob.Request request, final List<ResolvedLibrary> libraries) {
+        if (display.isDisposed()) {
+          return;
+        }
+        display.asyncExec(new Runnable() {
+
+          @Override
+          public void run() {
+            // a preview overtaken by a newer configuration is dropped
+            if (!previewTable.isDisposed() && request == previewRequest) {
+              showPreview(libraries);
+            }
+          }
+        });
+      }
+
+    });
+
+    final ModifyListener previewUpdater = new ModifyListener() {
+
+      @Override
+      public void modifyText(ModifyEvent event) {
+        updatePreview();
+      }
+
+    };
+    for (Text text : new Text[] {libDirText, libRegexText, srcRegexText, docRegexText, maxDepthText, excludeRegexText, pinsText}) {
+      text.addModifyListener(previewUpdater);
+    }
+  }
+
+  /**
+   * Schedules the preview of the current settings, unless they are invalid.
+   */
+  private void updatePreview() {
+    if (previewJob == null) {
+      // still creating the controls
+      return;
+    }
+
+    final String libRegex = libRegexText.getText().trim();
+    final String srcRegex = srcRegexText.getText().trim();
+    final String docRegex = docRegexText.getText().trim();
+    final boolean recursive = recursiveBox.getSelection();
+    final String excludeRegex = recursive ? excludeRegexText.getText().trim() : "";
+    final String error = getPreviewError(libRegex, srcRegex, docRegex, recursive, excludeRegex);
+    if (error != null) {
+      previewRequest = null;
+      previewJob.cancel();
+      showPreview(Collections.<ResolvedLibrary> emptyList());
+      previewStatus.setText(error);
+      return;
+    }
+
+    final VersionPolicy versionPolicy = collapseBox.getSelection() ? new VersionPolicy(VersionPolicy.getPins(pinsText.getText())) : null;
+    final LibraryResolver resolver = new LibraryResolver(libRegex, srcRegex, docRegex, recursive, versionPolicy,
+        Boolean.getBoolean(DynamicClasspathContainer.MANIFEST_CLASS_PATH_PROPERTY));
+    previewRequest = new MatchPreviewJob.Request(projectLabel.getText().trim(), libDirText.getText().trim(), recursive ? getMaxDepth() : LibraryScan.DEFAULT_DEPTH,
+        excludeRegex, resolver);
+    previewStatus.setText(Messages.PreviewPending);
+    previewJob.preview(previewRequest, PREVIEW_DELAY);
+  }
+
+  private String getPreviewError(String libRegex, String srcRegex, String docRegex, boolean recursive, String excludeRegex) {
+    if (projectLabel.getText().trim().isEmpty()) {
+      return Messages.ProjectErr;
+    }
+    if (DynamicClasspathContainer.getLibraryDirs(libDirText.getText()).isEmpty()) {
+      return Messages.LibDirErr;
+    }
+    if (!isRegexValid(libRegex)) {
+      return Messages.LibRegexErr;
+    }
+    if (!isRegexValid(srcRegex)) {
+      return Messages.SrcRegexErr;
+    }
+    if (!isRegexValid(docRegex)) {
+      return Messages.DocRegexErr;
+    }
+    if (recursive && getMaxDepth() < 1) {
+      return Messages.MaxDepthErr;
+    }
+    if (recursive && !isRegexValid(excludeRegex)) {
+      return Messages.ExcludeRegexErr;
+    }
+    return null;
+  }
+
+  private void showPreview(List<ResolvedLibrary> libraries) {
+    if (libraries == null) {
+      showPreview(Collections.<ResolvedLibrary> emptyList());
+      previewStatus.setText(Messages.PreviewNoLibDir);
+      return;
+    }
+
+    previewLibraries = libraries;
+    previewTable.clearAll();
+    previewTable.setItemCount(libraries.size());
+
+    int sources = 0;
+    int javadocs = 0;
+    for (ResolvedLibrary library : libraries) {
+      sources += library.getSource() != null ? 1 : 0;
+      javadocs += library.getJavadoc() != null ? 1 : 0;
+    }
+    previewStatus.setText(NLS.bind(Messages.PreviewStatus, new Object[] {libraries.size(), sources, javadocs}));
+  }
+
+  private static String getName(LibraryFile file) {
+    return file == null ? "" : file.getName();
+  }
+
   /**
    * Checks that the regular expression is valid.
    * 
@@ -1,21 +1,93 @@
 
 package ch.arktos.dcc;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.jdt.core.IClasspathEntry;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
+import org.eclipse.jdt.core.JavaModelException;
 import org.eclipse.jface.viewers.Viewer;
 import org.eclipse.jface.viewers.ViewerFilter;
 
 
 /**
- * The Class DynamicClasspathContainerViewerFilter.
+ * The Class DynamicClasspathContainerViewerFilter. If the {@link #LIMIT_PROPERTY} is set, it shows at most that many
+ * libraries of each dynamic classpath container, so that expanding a container with thousands of libraries does not
+ * create a tree item for each of them. The libraries are shown in the order of the container, i.e. sorted by path, and
+ * the description of a truncated container tells how many of its libraries are shown.
  * 
  * @author killert
  */
 public class DynamicClasspathContainerViewerFilter extends ViewerFilter {
 
+  /** The system property limiting the number of libraries shown per dynamic classpath container. */
+  public final static String LIMIT_PROPERTY = "ch.arktos.dcc.explorerLimit";
+
+  private final int          limit;
+
   /**
    * Instantiates a new dynamic classpath container viewer filter.
    */
   public DynamicClasspathContainerViewerFilter() {
+    limit = Integer.getInteger(LIMIT_PROPERTY, 0);
+  }
+
+  /**
+   * Drops the libraries of a dynamic classpath container beyond the limit. The children of a project may contain the
+   * libraries of several containers, if the libraries are not grouped by container, so the libraries are counted per
+   * container.
+   * 
+   * @param viewer
+   *          the viewer
+   * @param parent
+   *          the parent
+   * @param elements
+   *          the children of the parent
+   * @return the children to show
+   */
+  @Override
+  public Object[] filter(Viewer viewer, Object parent, Object[] elements) {
+    if (limit <= 0 || elements.length <= limit) {
+      return elements;
+    }
+
+    final Map<IPath, Integer> counts = new HashMap<IPath, Integer>();
+    final List<Object> shown = new ArrayList<Object>(elements.length);
+    for (Object element : elements) {
+      final IPath containerPath = getContainerPath(element);
+      if (containerPath != null) {
+        final Integer count = counts.get(containerPath);
+        final int shownCount = count == null ? 0 : count;
+        if (shownCount >= limit) {
+          continue;
+        }
+        counts.put(containerPath, shownCount + 1);
+      }
+      shown.add(element);
+    }
+    return shown.size() == elements.length ? elements : shown.toArray();
+  }
+
+  /**
+   * Returns the path of the dynamic classpath container contributing a library.
+   */
+  private static IPath getContainerPath(Object element) {
+    if (!(element instanceof IPackageFragmentRoot)) {
+      return null;
+    }
+    try {
+      final IClasspathEntry entry = ((IPackageFragmentRoot)element).getRawClasspathEntry();
+      final boolean dynamic = entry != null && entry.getEntryKind() == IClasspathEntry.CPE_CONTAINER && entry.getPath().segmentCount() > 0
+          && DynamicClasspathContainer.ID.equals(entry.getPath().segment(0));
+      return dynamic ? entry.getPath() : null;
+    }
+    catch (JavaModelException e) {
+      return null;
+    }
   }
 
   /**
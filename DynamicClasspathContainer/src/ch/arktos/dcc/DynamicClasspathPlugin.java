@@ -0,0 +1,169 @@
+
+package ch.arktos.dcc;
+
+import java.io.IOException;
+import java.util.Hashtable;
+
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Plugin;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.jdt.core.ElementChangedEvent;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.osgi.service.debug.DebugOptions;
+import org.eclipse.osgi.service.debug.DebugOptionsListener;
+import org.eclipse.osgi.service.debug.DebugTrace;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
+
+
+/**
+ * The activator of the plug-in. It registers the listener that keeps the dynamic classpath containers up to date with
+ * their library directories and persists the resolved containers when the workbench shuts down.
+ * <p>
+ * The resolution of the containers is traced with the debug options of the plug-in, see its <code>.options</code>.
+ * While it is traced, the {@link ResolutionStats} are recorded as well.
+ */
+public class DynamicClasspathPlugin extends Plugin implements DebugOptionsListener {
+
+  /** The plug-in ID. */
+  public final static String                        PLUGIN_ID        = "ch.arktos.dcc";
+
+  /** The debug option tracing the resolution and publication of the containers. */
+  public final static String                        TRACE_RESOLUTION = PLUGIN_ID + "/debug/resolution";
+
+  private static DynamicClasspathPlugin             plugin;
+  private static volatile DebugTrace                trace;
+
+  private LibraryChangeListener                     changeListener;
+  private SnapshotStore                             snapshotStore;
+  private PrebuiltIndexStore                        indexStore;
+  private ServiceRegistration<DebugOptionsListener> debugRegistration;
+  private final SharedSnapshotCache                 sharedCache      = new SharedSnapshotCache();
+
+  @Override
+  public void start(BundleContext context) throws Exception {
+    super.start(context);
+    plugin = this;
+
+    final Hashtable<String, String> properties = new Hashtable<String, String>();
+    properties.put(DebugOptions.LISTENER_SYMBOLICNAME, PLUGIN_ID);
+    debugRegistration = context.registerService(DebugOptionsListener.class, this, properties);
+
+    snapshotStore = new SnapshotStore(getStateLocation().append("snapshots").toFile());
+    changeListener = new LibraryChangeListener();
+    indexStore = PrebuiltIndexStore.create(getStateLocation().append("index-hashes").toFile(), changeListener);
+    ResourcesPlugin.getWorkspace().addResourceChangeListener(changeListener, IResourceChangeEvent.POST_CHANGE);
+    JavaCore.addElementChangedListener(changeListener, ElementChangedEvent.POST_CHANGE);
+  }
+
+  @Override
+  public void stop(BundleContext context) throws Exception {
+    JavaCore.removeElementChangedListener(changeListener);
+    ResourcesPlugin.getWorkspace().removeResourceChangeListener(changeListener);
+    changeListener.dispose();
+    try {
+      changeListener.saveSnapshots(snapshotStore);
+    }
+    catch (IOException e) {
+      getLog().log(new Status(IStatus.WARNING, PLUGIN_ID, "Cannot persist the dynamic classpath containers", e));
+    }
+    changeListener = null;
+    if (indexStore != null) {
+      indexStore.dispose();
+      try {
+        indexStore.saveHashes();
+      }
+      catch (IOException e) {
+        getLog().log(new Status(IStatus.WARNING, PLUGIN_ID, "Cannot persist the hashes of the indexed libraries", e));
+      }
+      indexStore = null;
+    }
+
+    if (isTracing()) {
+      trace("Resolution statistics:\n" + ResolutionStats.format());
+    }
+    debugRegistration.unregister();
+    debugRegistration = null;
+    trace = null;
+    ResolutionStats.setEnabled(false);
+
+    plugin = null;
+    super.stop(context);
+  }
+
+  @Override
+  public void optionsChanged(DebugOptions options) {
+    final boolean tracing = options.getBooleanOption(PLUGIN_ID + "/debug", false) && options.getBooleanOption(TRACE_RESOLUTION, false);
+    trace = tracing ? options.newDebugTrace(PLUGIN_ID) : null;
+    ResolutionStats.setEnabled(tracing);
+  }
+
+  /**
+   * Checks whether the resolution is traced. Callers check it before composing a trace message.
+   * 
+   * @return true, if the {@link #TRACE_RESOLUTION} option is enabled
+   */
+  public static boolean isTracing() {
+    return trace != null;
+  }
+
+  /**
+   * Traces a message for the {@link #TRACE_RESOLUTION} option, if it is enabled.
+   * 
+   * @param message
+   *          the message
+   */
+  public static void trace(String message) {
+    final DebugTrace current = trace;
+    if (current != null) {
+      current.trace(TRACE_RESOLUTION, message);
+    }
+  }
+
+  /**
+   * Returns the shared instance.
+   * 
+   * @return the plug-in instance
+   */
+  public static DynamicClasspathPlugin getDefault() {
+    return plugin;
+  }
+
+  /**
+   * Returns the cache sharing the resolved entries between projects.
+   * 
+   * @return the shared cache
+   */
+  public SharedSnapshotCache getSharedCache() {
+    return sharedCache;
+  }
+
+  /**
+   * Returns the store persisting the resolved containers across restarts.
+   * 
+   * @return the snapshot store
+   */
+  public SnapshotStore getSnapshotStore() {
+    return snapshotStore;
+  }
+
+  /**
+   * Returns the store of the prebuilt JDT indexes attached to the libraries.
+   * 
+   * @return the index store or <code>null</code> if no index directory is configured
+   */
+  public PrebuiltIndexStore getIndexStore() {
+    return indexStore;
+  }
+
+  /**
+   * Returns the listener tracking the published containers.
+   * 
+   * @return the change listener
+   */
+  public LibraryChangeListener getChangeListener() {
+    return changeListener;
+  }
+}
@@ -0,0 +1,106 @@
+
+package ch.arktos.dcc;
+
+import java.io.File;
+
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.jdt.core.IAccessRule;
+import org.eclipse.jdt.core.IClasspathAttribute;
+import org.eclipse.jdt.core.IClasspathEntry;
+import org.eclipse.jdt.core.JavaCore;
+
+
+/**
+ * Shares the immutable parts of the classpath entries of the libraries between all containers, e.g. between the
+ * containers of projects collecting the same library directory with different patterns, which do not share their
+ * snapshots. A library or attachment file has a single path instance and a javadoc file a single attribute.
+ * <p>
+ * The instances are keyed by the absolute paths of the files, so the equal files of different scans find the same
+ * instance, and referenced weakly, so they are released together with the last entry using them.
+ */
+public class EntryInterner {
+
+  private static final String                                    JAVADOC_LOCATION = "javadoc_location";
+
+  private static final IPath                                     ROOT_PATH        = new Path("/");
+  private static final IAccessRule[]                             NO_ACCESS_RULES  = {};
+
+  private static final WeakInterner<IPath>                       PATHS            = new WeakInterner<IPath>();
+  private static final WeakInterner<IClasspathAttribute>         JAVADOCS         = new WeakInterner<IClasspathAttribute>();
+
+  private static final WeakInterner.Factory<IPath>               PATH_FACTORY     = new WeakInterner.Factory<IPath>() {
+
+    @Override
+    public IPath create(String key) {
+      return new Path(key);
+    }
+  };
+
+  private static final WeakInterner.Factory<IClasspathAttribute> JAVADOC_FACTORY  = new WeakInterner.Factory<IClasspathAttribute>() {
+
+    @Override
+    public IClasspathAttribute create(String key) {
+      return JavaCore.newClasspathAttribute(JAVADOC_LOCATION, new File(key).toURI().toString());
+    }
+  };
+
+  /**
+   * Creates the classpath entry of a library, sharing its paths and javadoc attribute with the entries of all other
+   * containers.
+   *
+   * @param library
+   *          the library with its attachments
+   * @param indexLocation
+   *          the location of the prebuilt index of the library, or <code>null</code> if there is none
+   * @param isExported
+   *          whether the entry is exported
+   * @return the entry
+   */
+  public static IClasspathEntry newLibraryEntry(ResolvedLibrary library, String indexLocation, boolean isExported) {
+    // retrieve source attachment for library
+    final IPath src = getPath(library.getSource());
+
+    // retrieve javadoc attachment for library
+    final IClasspathAttribute javadocAttrib = getJavadocAttribute(library.getJavadoc());
+    IClasspathAttribute[] attribs = javadocAttrib == null ? null : new IClasspathAttribute[] {javadocAttrib};
+
+    // attach the prebuilt index of the library
+    if (indexLocation != null) {
+      final IClasspathAttribute indexAttrib = JavaCore.newClasspathAttribute(IClasspathAttribute.INDEX_LOCATION_ATTRIBUTE_NAME, indexLocation);
+      attribs = attribs == null ? new IClasspathAttribute[] {indexAttrib} : new IClasspathAttribute[] {attribs[0], indexAttrib};
+    }
+
+    return JavaCore.newLibraryEntry(getPath(library.getLibrary()), src, ROOT_PATH, NO_ACCESS_RULES, attribs, isExported);
+  }
+
+  /**
+   * Returns the path of a file.
+   *
+   * @param file
+   *          the library or attachment file
+   * @return the shared path, or <code>null</code> if the file is <code>null</code>
+   */
+  public static IPath getPath(LibraryFile file) {
+    if (file == null) {
+      return null;
+    }
+
+    return PATHS.intern(file.getFile().getAbsolutePath(), PATH_FACTORY);
+  }
+
+  /**
+   * Returns the javadoc location attribute referencing a javadoc archive or directory.
+   *
+   * @param javadoc
+   *          the javadoc attachment
+   * @return the shared attribute, or <code>null</code> if the attachment is <code>null</code>
+   */
+  public static IClasspathAttribute getJavadocAttribute(LibraryFile javadoc) {
+    if (javadoc == null) {
+      return null;
+    }
+
+    return JAVADOCS.intern(javadoc.getFile().getAbsolutePath(), JAVADOC_FACTORY);
+  }
+}
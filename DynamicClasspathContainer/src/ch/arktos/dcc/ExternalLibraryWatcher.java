@@ -0,0 +1,395 @@
+
+package ch.arktos.dcc;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.jdt.core.IJavaProject;
+
+
+/**
+ * Watches the library directories outside of the workspace, for which no resource deltas are reported. A single
+ * thread serves all containers with one {@link WatchService}: every listed directory is registered once, no matter how
+ * many containers list it, and the events are translated into {@link LibraryDelta}s for the containers, which are
+ * applied incrementally by the {@link LibraryUpdateScheduler}.
+ * <p>
+ * If the watch service overflows, the events of a directory are lost. The affected containers are then checked
+ * against the fingerprint of their directories and rescanned if they are outdated. Library directories that do not
+ * exist yet are polled until they are created.
+ */
+public class ExternalLibraryWatcher {
+
+  private static final long                     POLL_INTERVAL = 500;
+
+  private final LibraryChangeListener           listener;
+  private final Queue<Runnable>                 requests      = new ConcurrentLinkedQueue<Runnable>();
+
+  // only accessed by the watcher thread
+  private final Map<String, Watch>              watches       = new LinkedHashMap<String, Watch>();
+  private final Map<Path, WatchedDirectory>     directories   = new HashMap<Path, WatchedDirectory>();
+  private final Map<WatchKey, WatchedDirectory> keys          = new HashMap<WatchKey, WatchedDirectory>();
+
+  private WatchService                          service;
+  private Thread                                thread;
+  private volatile boolean                      closed;
+
+  /**
+   * Instantiates a new external library watcher.
+   * 
+   * @param listener
+   *          the listener tracking the published containers
+   */
+  public ExternalLibraryWatcher(LibraryChangeListener listener) {
+    this.listener = listener;
+  }
+
+  /**
+   * Starts watching the external library directories of a published container, or stops watching them if the
+   * container has none.
+   * 
+   * @param key
+   *          identifies the project and container
+   * @param project
+   *          the project referencing the container
+   * @param container
+   *          the published container
+   */
+  public void watch(final String key, IJavaProject project, DynamicClasspathContainer container) {
+    final List<File> externalRoots = container.getExternalRoots();
+    if (externalRoots.isEmpty()) {
+      if (isStarted()) {
+        unwatch(key);
+      }
+      return;
+    }
+
+    final Watch watch = new Watch(project, container.getPath(), externalRoots, container.getScanDepth(), container);
+    request(new Runnable() {
+
+      @Override
+      public void run() {
+        final Watch previous = watches.get(key);
+        if (previous != null && previous.hasSameDirectories(watch)) {
+          return;
+        }
+        if (previous != null) {
+          removeDirectories(key);
+        }
+        watches.put(key, watch);
+        for (File root : watch.roots) {
+          if (!addDirectory(key, watch, root.toPath(), 0)) {
+            watch.missingRoots.add(root);
+          }
+        }
+      }
+    });
+  }
+
+  /**
+   * Stops watching the external library directories of a container.
+   * 
+   * @param key
+   *          identifies the project and container
+   */
+  public void unwatch(final String key) {
+    request(new Runnable() {
+
+      @Override
+      public void run() {
+        if (watches.remove(key) != null) {
+          removeDirectories(key);
+        }
+      }
+    });
+  }
+
+  /**
+   * Stops the watcher thread and releases the watch service.
+   */
+  public synchronized void dispose() {
+    closed = true;
+    if (thread != null) {
+      thread.interrupt();
+      try {
+        service.close();
+      }
+      catch (IOException e) {
+        // nothing left to release
+      }
+    }
+  }
+
+  private synchronized boolean isStarted() {
+    return thread != null;
+  }
+
+  private synchronized void request(Runnable request) {
+    if (closed) {
+      return;
+    }
+    requests.add(request);
+    if (thread == null) {
+      try {
+        service = FileSystems.getDefault().newWatchService();
+      }
+      catch (IOException e) {
+        closed = true;
+        return;
+      }
+      thread = new Thread(new Runnable() {
+
+        @Override
+        public void run() {
+          watchEvents();
+        }
+      }, "Dynamic Classpath Container Watcher");
+      thread.setDaemon(true);
+      thread.start();
+    }
+  }
+
+  private void watchEvents() {
+    while (!closed) {
+      Runnable request;
+      while ((request = requests.poll()) != null) {
+        request.run();
+      }
+
+      final WatchKey watchKey;
+      try {
+        watchKey = service.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+      }
+      catch (InterruptedException | ClosedWatchServiceException e) {
+        return;
+      }
+      if (watchKey == null) {
+        checkMissingRoots();
+        continue;
+      }
+
+      final WatchedDirectory dir = keys.get(watchKey);
+      final List<WatchEvent<?>> events = watchKey.pollEvents();
+      if (!watchKey.reset()) {
+        // the directory is gone, its parent reports the removal unless it is a library directory
+        keys.remove(watchKey);
+        if (dir != null) {
+          directories.remove(dir.path);
+          removedRoot(dir);
+        }
+      }
+      if (dir != null) {
+        dispatch(dir, events);
+      }
+    }
+  }
+
+  private void dispatch(WatchedDirectory dir, List<WatchEvent<?>> events) {
+    final Map<String, LibraryDelta> deltas = new HashMap<String, LibraryDelta>();
+    for (String key : dir.watchers) {
+      deltas.put(key, new LibraryDelta());
+    }
+
+    for (WatchEvent<?> event : events) {
+      for (String key : dir.watchers) {
+        final Watch watch = watches.get(key);
+        final DynamicClasspathContainer container = listener.getContainer(watch.project, watch.containerPath);
+        if (container == null) {
+          continue;
+        }
+
+        if (event.kind() == OVERFLOW) {
+          // the events are lost, only rescan if the directories actually changed
+          if (!container.isUpToDate()) {
+            deltas.get(key).setRescan();
+          }
+          continue;
+        }
+
+        final Path path = dir.path.resolve((Path)event.context());
+        addChange(deltas.get(key), key, watch, container, dir, path, event.kind());
+      }
+    }
+
+    for (Map.Entry<String, LibraryDelta> delta : deltas.entrySet()) {
+      if (!delta.getValue().isEmpty()) {
+        final Watch watch = watches.get(delta.getKey());
+        listener.getScheduler().schedule(watch.project, watch.containerPath, delta.getValue());
+      }
+    }
+  }
+
+  private void addChange(LibraryDelta delta, String key, Watch watch, DynamicClasspathContainer container, WatchedDirectory dir, Path path, WatchEvent.Kind<?> kind) {
+    final String name = path.getFileName().toString();
+    if (kind == ENTRY_DELETE) {
+      if (directories.containsKey(path) || container.isRelevant(name)) {
+        delta.addRemoved(path.toFile());
+      }
+    }
+    else if (Files.isDirectory(path) && watch.getDepth(dir.path) < watch.depth && !container.isExcluded(name)) {
+      // a new listed directory requires a rescan, and its content has to be watched from now on
+      addDirectory(key, watch, path, watch.getDepth(path));
+      delta.addChanged(path.toFile());
+    }
+    else if (container.isRelevant(name)) {
+      delta.addChanged(path.toFile());
+    }
+  }
+
+  private void checkMissingRoots() {
+    for (Map.Entry<String, Watch> entry : watches.entrySet()) {
+      final Watch watch = entry.getValue();
+      final Iterator<File> iterator = watch.missingRoots.iterator();
+      while (iterator.hasNext()) {
+        final File root = iterator.next();
+        if (addDirectory(entry.getKey(), watch, root.toPath(), 0)) {
+          iterator.remove();
+          final LibraryDelta delta = new LibraryDelta();
+          delta.setRescan();
+          listener.getScheduler().schedule(watch.project, watch.containerPath, delta);
+        }
+      }
+    }
+  }
+
+  /**
+   * Polls a removed library directory again until it is recreated, and rescans the containers listing it.
+   */
+  private void removedRoot(WatchedDirectory dir) {
+    final File file = dir.path.toFile();
+    for (String key : dir.watchers) {
+      final Watch watch = watches.get(key);
+      if (watch != null && watch.roots.contains(file)) {
+        watch.missingRoots.add(file);
+        final LibraryDelta delta = new LibraryDelta();
+        delta.setRescan();
+        listener.getScheduler().schedule(watch.project, watch.containerPath, delta);
+      }
+    }
+  }
+
+  /**
+   * Registers a directory and its listed subdirectories for a container.
+   * 
+   * @return false, if the directory cannot be watched, e.g. because it does not exist
+   */
+  private boolean addDirectory(String key, Watch watch, Path path, int depth) {
+    WatchedDirectory dir = directories.get(path);
+    if (dir == null) {
+      final WatchKey watchKey;
+      try {
+        watchKey = path.register(service, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+      }
+      catch (IOException e) {
+        return false;
+      }
+      dir = new WatchedDirectory(path, watchKey);
+      directories.put(path, dir);
+      keys.put(watchKey, dir);
+    }
+    dir.watchers.add(key);
+
+    if (depth < watch.depth) {
+      try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
+        for (Path child : stream) {
+          if (Files.isDirectory(child) && !watch.container.isExcluded(child.getFileName().toString())) {
+            addDirectory(key, watch, child, depth + 1);
+          }
+        }
+      }
+      catch (IOException e) {
+        // the directory is watched, so a rescan is triggered once it can be read
+      }
+    }
+    return true;
+  }
+
+  private void removeDirectories(String key) {
+    final Iterator<WatchedDirectory> iterator = directories.values().iterator();
+    while (iterator.hasNext()) {
+      final WatchedDirectory dir = iterator.next();
+      if (dir.watchers.remove(key) && dir.watchers.isEmpty()) {
+        dir.watchKey.cancel();
+        keys.remove(dir.watchKey);
+        iterator.remove();
+      }
+    }
+  }
+
+  /**
+   * The external library directories of a container.
+   */
+  private static class Watch {
+
+    private final IJavaProject              project;
+    private final IPath                     containerPath;
+    private final List<File>                roots;
+    private final int                       depth;
+    private final DynamicClasspathContainer container;
+    private final Set<File>                 missingRoots = new HashSet<File>();
+
+    Watch(IJavaProject project, IPath containerPath, List<File> roots, int depth, DynamicClasspathContainer container) {
+      this.project = project;
+      this.containerPath = containerPath;
+      this.roots = new ArrayList<File>(roots);
+      this.depth = depth;
+      this.container = container;
+    }
+
+    boolean hasSameDirectories(Watch other) {
+      return roots.equals(other.roots) && depth == other.depth;
+    }
+
+    /**
+     * Returns the depth of a directory below the first library directory containing it.
+     */
+    int getDepth(Path dir) {
+      for (File root : roots) {
+        final Path rootPath = root.toPath();
+        if (dir.startsWith(rootPath)) {
+          return dir.equals(rootPath) ? 0 : rootPath.relativize(dir).getNameCount();
+        }
+      }
+      return depth;
+    }
+  }
+
+  /**
+   * A directory registered with the watch service, shared by all containers listing it.
+   */
+  private static class WatchedDirectory {
+
+    private final Path        path;
+    private final WatchKey    watchKey;
+    private final Set<String> watchers = new HashSet<String>();
+
+    WatchedDirectory(Path path, WatchKey watchKey) {
+      this.path = path;
+      this.watchKey = watchKey;
+    }
+  }
+}
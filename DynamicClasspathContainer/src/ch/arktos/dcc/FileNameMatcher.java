@@ -0,0 +1,322 @@
+
+package ch.arktos.dcc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+
+/**
+ * Matches file names against one of the regular expressions configured for a container. Matchers are compiled once
+ * per regular expression and shared by all containers using the same configuration. Only the most recently used
+ * matchers are kept, since the live preview of {@link DynamicClasspathContainerPage} compiles every partially typed
+ * expression.
+ * <p>
+ * Regular expressions that only consist of literals, groups of literal alternatives, a leading and/or trailing
+ * <code>.*</code> and an optional leading negative lookahead of the form <code>(?!.*(a|b).*)</code> are reduced to
+ * plain string comparisons. This covers the defaults offered by {@link DynamicClasspathContainerPage}, e.g.
+ * <code>.*(-sources|-src)\.(jar|zip)</code> becomes a check for four literal suffixes. Every other expression is
+ * matched with a precompiled {@link Pattern}.
+ */
+public abstract class FileNameMatcher {
+
+  private static final int                          MAX_MATCHERS = 256;
+
+  private static final Map<String, FileNameMatcher> MATCHERS     = Collections.synchronizedMap(new LinkedHashMap<String, FileNameMatcher>(16, 0.75f, true) {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, FileNameMatcher> eldest) {
+      return size() > MAX_MATCHERS;
+    }
+  });
+
+  /**
+   * Returns the shared matcher for the given regular expression.
+   *
+   * @param regex
+   *          regular expression a file name has to match completely
+   * @return the matcher
+   * @throws java.util.regex.PatternSyntaxException
+   *           if the regular expression is not valid
+   */
+  public static FileNameMatcher compile(String regex) {
+    FileNameMatcher matcher = MATCHERS.get(regex);
+    if (matcher == null) {
+      matcher = LiteralMatcher.parse(regex);
+      if (matcher == null) {
+        matcher = new RegexMatcher(Pattern.compile(regex));
+      }
+      MATCHERS.put(regex, matcher);
+    }
+    return matcher;
+  }
+
+  /**
+   * Checks whether the complete file name is matched.
+   *
+   * @param name
+   *          the file name
+   * @return true, if the name matches
+   */
+  public abstract boolean matches(String name);
+
+  /**
+   * Finds the smallest non-zero index from which on the rest of the file name is matched. This is used to split an
+   * attachment file name into the library base name and the attachment specific suffix.
+   *
+   * @param name
+   *          the file name
+   * @return the start of the matched suffix or -1 if no suffix following a non-empty prefix is matched
+   */
+  public int matchStart(String name) {
+    for (int i = 1; i < name.length(); i++) {
+      if (matches(name.substring(i))) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static class RegexMatcher extends FileNameMatcher {
+
+    private final Pattern pattern;
+
+    RegexMatcher(Pattern pattern) {
+      this.pattern = pattern;
+    }
+
+    @Override
+    public boolean matches(String name) {
+      return pattern.matcher(name).matches();
+    }
+
+    @Override
+    public int matchStart(String name) {
+      final Matcher matcher = pattern.matcher(name);
+      for (int i = 1; i < name.length(); i++) {
+        if (matcher.region(i, name.length()).matches()) {
+          return i;
+        }
+      }
+      return -1;
+    }
+  }
+
+  private static class LiteralMatcher extends FileNameMatcher {
+
+    private static final int MAX_LITERALS = 64;
+
+    private final String[]   literals;
+    private final String[]   excluded;
+    private final boolean    anyPrefix;
+    private final boolean    anySuffix;
+
+    LiteralMatcher(List<String> literals, List<String> excluded, boolean anyPrefix, boolean anySuffix) {
+      this.literals = literals.toArray(new String[literals.size()]);
+      this.excluded = excluded.toArray(new String[excluded.size()]);
+      this.anyPrefix = anyPrefix;
+      this.anySuffix = anySuffix;
+    }
+
+    @Override
+    public boolean matches(String name) {
+      for (String exclude : excluded) {
+        if (name.contains(exclude)) {
+          return false;
+        }
+      }
+      for (String literal : literals) {
+        if (anyPrefix && anySuffix ? name.contains(literal) : anyPrefix ? name.endsWith(literal) : anySuffix ? name.startsWith(literal) : name.equals(literal)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    @Override
+    public int matchStart(String name) {
+      if (anyPrefix || anySuffix || excluded.length > 0) {
+        return super.matchStart(name);
+      }
+
+      // the longest matching suffix determines the start
+      int start = -1;
+      for (String literal : literals) {
+        if (!literal.isEmpty() && name.length() > literal.length() && name.endsWith(literal)) {
+          final int candidate = name.length() - literal.length();
+          if (start < 0 || candidate < start) {
+            start = candidate;
+          }
+        }
+      }
+      return start;
+    }
+
+    /**
+     * Reduces the regular expression to literals if possible.
+     *
+     * @param regex
+     *          the regular expression
+     * @return the literal matcher or <code>null</code> if the expression needs a real regular expression engine
+     */
+    static LiteralMatcher parse(String regex) {
+      final Parser parser = new Parser(regex);
+      List<String> excluded = Collections.emptyList();
+      if (regex.startsWith("(?!")) {
+        parser.pos = 3;
+        final List<Object> lookahead = parser.sequence();
+        if (lookahead == null || !parser.consume(')') || lookahead.isEmpty() || lookahead.get(0) != Parser.ANY) {
+          return null;
+        }
+        lookahead.remove(0);
+        if (!lookahead.isEmpty() && lookahead.get(lookahead.size() - 1) == Parser.ANY) {
+          lookahead.remove(lookahead.size() - 1);
+        }
+        excluded = expand(lookahead);
+      }
+
+      final List<Object> tokens = parser.sequence();
+      if (tokens == null || parser.pos != regex.length()) {
+        return null;
+      }
+      final boolean anyPrefix = !tokens.isEmpty() && tokens.get(0) == Parser.ANY;
+      if (anyPrefix) {
+        tokens.remove(0);
+      }
+      final boolean anySuffix = !tokens.isEmpty() && tokens.get(tokens.size() - 1) == Parser.ANY;
+      if (anySuffix) {
+        tokens.remove(tokens.size() - 1);
+      }
+      final List<String> literals = expand(tokens);
+      if (literals == null || excluded == null) {
+        return null;
+      }
+      return new LiteralMatcher(literals, excluded, anyPrefix, anySuffix);
+    }
+
+    /**
+     * Expands a sequence of literals and literal alternatives to all the strings it matches.
+     */
+    @SuppressWarnings("unchecked")
+    private static List<String> expand(List<Object> tokens) {
+      List<String> result = Collections.singletonList("");
+      for (Object token : tokens) {
+        if (token == Parser.ANY) {
+          return null;
+        }
+        final List<String> alternatives = token instanceof String ? Collections.singletonList((String)token) : (List<String>)token;
+        if (result.size() * alternatives.size() > MAX_LITERALS) {
+          return null;
+        }
+        final List<String> combined = new ArrayList<String>(result.size() * alternatives.size());
+        for (String head : result) {
+          for (String alternative : alternatives) {
+            combined.add(head.concat(alternative));
+          }
+        }
+        result = combined;
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Tokenizer for the literal subset of the regular expression syntax. A sequence consists of literal strings,
+   * lists of literal alternatives and the {@link #ANY} marker for <code>.*</code>.
+   */
+  private static class Parser {
+
+    static final Object  ANY = new Object();
+
+    private final String regex;
+    int                  pos;
+
+    Parser(String regex) {
+      this.regex = regex;
+    }
+
+    boolean consume(char c) {
+      if (pos < regex.length() && regex.charAt(pos) == c) {
+        pos++;
+        return true;
+      }
+      return false;
+    }
+
+    /**
+     * Parses tokens up to the end of the expression or a closing parenthesis.
+     *
+     * @return the tokens or <code>null</code> if the sequence is not literal
+     */
+    List<Object> sequence() {
+      final List<Object> tokens = new ArrayList<Object>();
+      while (pos < regex.length() && regex.charAt(pos) != ')') {
+        final char c = regex.charAt(pos);
+        if (c == '.' && pos + 1 < regex.length() && regex.charAt(pos + 1) == '*') {
+          pos += 2;
+          tokens.add(ANY);
+        }
+        else if (c == '(') {
+          pos++;
+          if (regex.startsWith("?:", pos)) {
+            pos += 2;
+          }
+          final List<String> alternatives = alternatives();
+          if (alternatives == null || !consume(')')) {
+            return null;
+          }
+          tokens.add(alternatives);
+        }
+        else {
+          final String literal = literal();
+          if (literal == null) {
+            return null;
+          }
+          tokens.add(literal);
+        }
+      }
+      return tokens;
+    }
+
+    private List<String> alternatives() {
+      final List<String> alternatives = new ArrayList<String>();
+      final StringBuilder current = new StringBuilder();
+      while (pos < regex.length() && regex.charAt(pos) != ')') {
+        if (consume('|')) {
+          alternatives.add(current.toString());
+          current.setLength(0);
+          continue;
+        }
+        final String literal = literal();
+        if (literal == null) {
+          return null;
+        }
+        current.append(literal);
+      }
+      alternatives.add(current.toString());
+      return alternatives;
+    }
+
+    private String literal() {
+      final char c = regex.charAt(pos);
+      if (c == '\\') {
+        if (pos + 1 < regex.length() && !Character.isLetterOrDigit(regex.charAt(pos + 1))) {
+          pos += 2;
+          return String.valueOf(regex.charAt(pos - 1));
+        }
+        return null;
+      }
+      if ("()[]{}.*+?^$|".indexOf(c) >= 0) {
+        return null;
+      }
+      pos++;
+      return String.valueOf(c);
+    }
+  }
+}
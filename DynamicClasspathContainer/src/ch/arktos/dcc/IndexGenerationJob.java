@@ -0,0 +1,58 @@
+
+package ch.arktos.dcc;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jdt.core.JavaModelException;
+
+
+/**
+ * Generates the prebuilt indexes queued by the {@link PrebuiltIndexStore} in the background and refreshes the published
+ * containers afterwards, so that their entries reference the new indexes.
+ */
+public class IndexGenerationJob extends Job {
+
+  private final PrebuiltIndexStore    store;
+  private final LibraryChangeListener listener;
+
+  /**
+   * Instantiates a new index generation job.
+   *
+   * @param store
+   *          the store queuing the libraries
+   * @param listener
+   *          the listener tracking the published containers
+   */
+  public IndexGenerationJob(PrebuiltIndexStore store, LibraryChangeListener listener) {
+    super(Messages.IndexJobName);
+    this.store = store;
+    this.listener = listener;
+    setPriority(DECORATE);
+  }
+
+  @Override
+  public boolean belongsTo(Object family) {
+    return family == IndexGenerationJob.class;
+  }
+
+  @Override
+  protected IStatus run(IProgressMonitor monitor) {
+    final SubMonitor progress = SubMonitor.convert(monitor, 10);
+    try {
+      if (store.generatePending(progress.newChild(9)) > 0) {
+        listener.refresh(progress.newChild(1));
+      }
+      return Status.OK_STATUS;
+    }
+    catch (OperationCanceledException e) {
+      return Status.CANCEL_STATUS;
+    }
+    catch (JavaModelException e) {
+      return e.getStatus();
+    }
+  }
+}
@@ -0,0 +1,464 @@
+
+package ch.arktos.dcc;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.jdt.core.ElementChangedEvent;
+import org.eclipse.jdt.core.IClasspathContainer;
+import org.eclipse.jdt.core.IClasspathEntry;
+import org.eclipse.jdt.core.IElementChangedListener;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaElementDelta;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.JavaModelException;
+
+
+/**
+ * Tracks the published dynamic classpath containers and translates resource deltas of their library folders into
+ * {@link LibraryDelta}s. The deltas are applied incrementally to the resolved entries, and a container is only
+ * published again if its entries actually changed.
+ * <p>
+ * Library directories outside of the workspace are not covered by resource deltas and are watched by the
+ * {@link ExternalLibraryWatcher} instead.
+ * <p>
+ * Containers stop being tracked when their project is closed or they are removed from its classpath, which also
+ * releases their reference to the {@link SharedSnapshotCache}.
+ */
+public class LibraryChangeListener implements IResourceChangeListener, IElementChangedListener {
+
+  private static final int                RELEVANT_FLAGS         = IResourceDelta.CONTENT | IResourceDelta.REPLACED | IResourceDelta.TYPE;
+  private static final long               ATTACHMENT_DELAY       = 1000;
+
+  private final Map<String, Registration> registrations          = new ConcurrentHashMap<String, Registration>();
+  private final LibraryUpdateScheduler    scheduler              = new LibraryUpdateScheduler(this);
+  private final AtomicLong                suppressedPublications = new AtomicLong();
+  private final ExternalLibraryWatcher    watcher                = new ExternalLibraryWatcher(this);
+  private final AttachmentResolveJob      attachmentJob          = new AttachmentResolveJob(this);
+
+  /**
+   * Sets the container JDT requested from the initializer and tracks it for changes of its library folder. Unlike
+   * {@link #publish(IJavaProject, DynamicClasspathContainer, IProgressMonitor)}, the container is set even if its
+   * entries equal the ones last published, since JDT has no container bound to the project at this point.
+   * 
+   * @param project
+   *          the project referencing the container
+   * @param container
+   *          the container
+   * @param monitor
+   *          the progress monitor, may be <code>null</code>
+   * @throws JavaModelException
+   *           if the container could not be set
+   */
+  public void initialize(IJavaProject project, DynamicClasspathContainer container, IProgressMonitor monitor) throws JavaModelException {
+    initialize(container.getPath(), new IJavaProject[] {project}, new DynamicClasspathContainer[] {container}, monitor);
+  }
+
+  /**
+   * Sets the containers of several projects referencing the same container path on their initialization, with a
+   * single call to {@link JavaCore#setClasspathContainer(IPath, IJavaProject[], IClasspathContainer[], IProgressMonitor)}.
+   * 
+   * @param containerPath
+   *          the container path
+   * @param projects
+   *          the projects referencing the container
+   * @param containers
+   *          the containers, one per project
+   * @param monitor
+   *          the progress monitor, may be <code>null</code>
+   * @throws JavaModelException
+   *           if the containers could not be set
+   * @see #initialize(IJavaProject, DynamicClasspathContainer, IProgressMonitor)
+   */
+  public void initialize(IPath containerPath, IJavaProject[] projects, DynamicClasspathContainer[] containers, IProgressMonitor monitor) throws JavaModelException {
+    publish(containerPath, projects, containers, true, monitor);
+  }
+
+  /**
+   * Publishes a container replacing the one last published for a project and tracks it for changes of its library
+   * folder.
+   * 
+   * @param project
+   *          the project referencing the container
+   * @param container
+   *          the container
+   * @param monitor
+   *          the progress monitor, may be <code>null</code>
+   * @throws JavaModelException
+   *           if the container could not be set
+   */
+  public void publish(IJavaProject project, DynamicClasspathContainer container, IProgressMonitor monitor) throws JavaModelException {
+    publish(container.getPath(), new IJavaProject[] {project}, new DynamicClasspathContainer[] {container}, monitor);
+  }
+
+  /**
+   * Publishes the containers of several projects referencing the same container path with a single call to
+   * {@link JavaCore#setClasspathContainer(IPath, IJavaProject[], IClasspathContainer[], IProgressMonitor)}, so that
+   * the Java model processes the classpath changes of all of them at once. Containers whose entries equal the ones
+   * last published are not set again, which is only valid for containers replacing a published one.
+   * 
+   * @param containerPath
+   *          the container path
+   * @param projects
+   *          the projects referencing the container
+   * @param containers
+   *          the containers, one per project
+   * @param monitor
+   *          the progress monitor, may be <code>null</code>
+   * @throws JavaModelException
+   *           if the containers could not be set
+   */
+  public void publish(IPath containerPath, IJavaProject[] projects, DynamicClasspathContainer[] containers, IProgressMonitor monitor) throws JavaModelException {
+    publish(containerPath, projects, containers, false, monitor);
+  }
+
+  private void publish(IPath containerPath, IJavaProject[] projects, DynamicClasspathContainer[] containers, boolean initial, IProgressMonitor monitor)
+      throws JavaModelException {
+    final List<IJavaProject> changedProjects = new ArrayList<IJavaProject>(projects.length);
+    final List<IClasspathContainer> changedContainers = new ArrayList<IClasspathContainer>(projects.length);
+    for (int i = 0; i < projects.length; i++) {
+      if (!initial && isUnchanged(projects[i], containers[i])) {
+        suppressedPublications.incrementAndGet();
+        ResolutionStats.count(ResolutionStats.Counter.SUPPRESSED);
+      }
+      else {
+        changedProjects.add(projects[i]);
+        changedContainers.add(containers[i]);
+        final boolean republished = registrations.containsKey(getKey(projects[i], containerPath));
+        ResolutionStats.count(republished ? ResolutionStats.Counter.REPUBLISHED : ResolutionStats.Counter.PUBLISHED);
+      }
+    }
+
+    if (!changedProjects.isEmpty()) {
+      final long start = ResolutionStats.start();
+      JavaCore.setClasspathContainer(containerPath, changedProjects.toArray(new IJavaProject[changedProjects.size()]),
+          changedContainers.toArray(new IClasspathContainer[changedContainers.size()]), monitor);
+      final long duration = ResolutionStats.stop(ResolutionStats.Phase.PUBLICATION, start);
+      if (DynamicClasspathPlugin.isTracing()) {
+        DynamicClasspathPlugin.trace("Published " + containerPath + " for " + changedProjects.size() + " of " + projects.length + " projects in " + duration / 1000 + " us");
+      }
+    }
+    for (int i = 0; i < projects.length; i++) {
+      register(projects[i], containers[i]);
+    }
+  }
+
+  /**
+   * Returns how many containers have not been set again because their entries did not change. Setting an unchanged
+   * container would still make the Java model report a classpath change and trigger a build.
+   * 
+   * @return the number of suppressed publications
+   */
+  public long getSuppressedPublications() {
+    return suppressedPublications.get();
+  }
+
+  private boolean isUnchanged(IJavaProject project, DynamicClasspathContainer container) {
+    final Registration published = registrations.get(getKey(project, container.getPath()));
+    final IClasspathEntry[] entries = container.getResolvedEntries();
+    return published != null && entries != null && ContainerSnapshot.isSameClasspath(entries, published.container.getResolvedEntries());
+  }
+
+  private void register(IJavaProject project, DynamicClasspathContainer container) {
+    final String key = getKey(project, container.getPath());
+    final Registration registration = new Registration(project, container, container.getSharingKey());
+    if (registration.sharingKey != null) {
+      getSharedCache().acquire(registration.sharingKey, key);
+      container.share();
+    }
+    final Registration previous = registrations.put(key, registration);
+    if (previous != null && previous.sharingKey != null && !previous.sharingKey.equals(registration.sharingKey)) {
+      release(key, previous);
+    }
+    watcher.watch(key, project, container);
+    if (container.isAttachmentsDeferred()) {
+      scheduleAttachments();
+    }
+  }
+
+  /**
+   * Schedules the lookup of the attachments deferred by published containers.
+   */
+  public void scheduleAttachments() {
+    attachmentJob.schedule(ATTACHMENT_DELAY);
+  }
+
+  /**
+   * Returns the container that has last been published for a project.
+   * 
+   * @param project
+   *          the project
+   * @param containerPath
+   *          the container path
+   * @return the container or <code>null</code> if none is tracked
+   */
+  public DynamicClasspathContainer getContainer(IJavaProject project, IPath containerPath) {
+    final Registration registration = registrations.get(getKey(project, containerPath));
+    return registration == null ? null : registration.container;
+  }
+
+  /**
+   * Returns the sharing key of the container that has last been published for a project. The key is computed when the
+   * container is published and released with it.
+   * 
+   * @param project
+   *          the project
+   * @param containerPath
+   *          the container path
+   * @return the sharing key or <code>null</code> if no container is tracked or its library directories are unknown
+   */
+  public String getSharingKey(IJavaProject project, IPath containerPath) {
+    final Registration registration = registrations.get(getKey(project, containerPath));
+    return registration == null ? null : registration.sharingKey;
+  }
+
+  /**
+   * Refreshes all tracked containers and publishes the ones whose entries changed, e.g. after prebuilt indexes became
+   * available.
+   * 
+   * @param monitor
+   *          the progress monitor
+   * @throws JavaModelException
+   *           if a container cannot be published
+   */
+  public void refresh(IProgressMonitor monitor) throws JavaModelException {
+    refresh(false, monitor);
+  }
+
+  /**
+   * Adds the attachments to the containers which have been published without them.
+   * 
+   * @param monitor
+   *          the progress monitor
+   * @throws JavaModelException
+   *           if a container cannot be published
+   */
+  public void resolveAttachments(IProgressMonitor monitor) throws JavaModelException {
+    refresh(true, monitor);
+  }
+
+  private void refresh(boolean deferredOnly, IProgressMonitor monitor) throws JavaModelException {
+    // the containers with the same path are published at once
+    final Map<IPath, List<IJavaProject>> projects = new LinkedHashMap<IPath, List<IJavaProject>>();
+    final Map<IPath, List<DynamicClasspathContainer>> containers = new LinkedHashMap<IPath, List<DynamicClasspathContainer>>();
+    for (Registration registration : registrations.values()) {
+      if (deferredOnly && !registration.container.isAttachmentsDeferred()) {
+        continue;
+      }
+      final DynamicClasspathContainer refreshed = registration.container.refresh();
+      if (refreshed != null) {
+        final IPath containerPath = refreshed.getPath();
+        if (!projects.containsKey(containerPath)) {
+          projects.put(containerPath, new ArrayList<IJavaProject>());
+          containers.put(containerPath, new ArrayList<DynamicClasspathContainer>());
+        }
+        projects.get(containerPath).add(registration.project);
+        containers.get(containerPath).add(refreshed);
+      }
+    }
+
+    for (Map.Entry<IPath, List<IJavaProject>> entry : projects.entrySet()) {
+      final List<DynamicClasspathContainer> pathContainers = containers.get(entry.getKey());
+      publish(entry.getKey(), entry.getValue().toArray(new IJavaProject[entry.getValue().size()]), pathContainers.toArray(new DynamicClasspathContainer[pathContainers.size()]), monitor);
+    }
+  }
+
+  /**
+   * Returns the scheduler coalescing the updates of the tracked containers.
+   * 
+   * @return the scheduler
+   */
+  public LibraryUpdateScheduler getScheduler() {
+    return scheduler;
+  }
+
+  /**
+   * Persists the scans of all tracked containers.
+   * 
+   * @param store
+   *          the store
+   * @throws IOException
+   *           if a scan cannot be written
+   */
+  public void saveSnapshots(SnapshotStore store) throws IOException {
+    for (Map.Entry<String, Registration> registration : registrations.entrySet()) {
+      final LibraryScan scan = registration.getValue().container.getResolvedScan();
+      if (scan != null) {
+        store.save(registration.getKey(), scan);
+      }
+    }
+  }
+
+  @Override
+  public void resourceChanged(IResourceChangeEvent event) {
+    final IResourceDelta delta = event.getDelta();
+    if (delta == null) {
+      return;
+    }
+
+    final Iterator<Registration> iterator = registrations.values().iterator();
+    while (iterator.hasNext()) {
+      final Registration registration = iterator.next();
+      if (!registration.project.getProject().isOpen()) {
+        iterator.remove();
+        unregistered(registration);
+        continue;
+      }
+
+      final LibraryDelta changes = new LibraryDelta();
+      for (IPath libFolderPath : registration.container.getLibraryFolderPaths()) {
+        final IResourceDelta libDelta = delta.findMember(libFolderPath);
+        if (libDelta != null) {
+          addChanges(changes, libDelta, registration.container);
+        }
+      }
+      if (!changes.isEmpty()) {
+        scheduler.schedule(registration.project, registration.container.getPath(), changes);
+      }
+    }
+  }
+
+  /**
+   * Stops tracking the containers that have been removed from the classpath of their project.
+   * 
+   * @param event
+   *          the Java element change
+   */
+  @Override
+  public void elementChanged(ElementChangedEvent event) {
+    for (IJavaElementDelta projectDelta : event.getDelta().getAffectedChildren()) {
+      if ((projectDelta.getFlags() & (IJavaElementDelta.F_RAW_CLASSPATH_CHANGED | IJavaElementDelta.F_CLOSED)) == 0 && projectDelta.getKind() != IJavaElementDelta.REMOVED) {
+        continue;
+      }
+
+      final IJavaElement element = projectDelta.getElement();
+      final Iterator<Registration> iterator = registrations.values().iterator();
+      while (iterator.hasNext()) {
+        final Registration registration = iterator.next();
+        if (registration.project.equals(element) && !isOnClasspath(registration.project, registration.container.getPath())) {
+          iterator.remove();
+          unregistered(registration);
+        }
+      }
+    }
+  }
+
+  private static boolean isOnClasspath(IJavaProject project, IPath containerPath) {
+    if (!project.exists() || !project.getProject().isOpen()) {
+      return false;
+    }
+
+    try {
+      for (IClasspathEntry entry : project.getRawClasspath()) {
+        if (entry.getEntryKind() == IClasspathEntry.CPE_CONTAINER && entry.getPath().equals(containerPath)) {
+          return true;
+        }
+      }
+      return false;
+    }
+    catch (JavaModelException e) {
+      // keep the container as long as the classpath cannot be read
+      return true;
+    }
+  }
+
+  private void unregistered(Registration registration) {
+    final String key = getKey(registration.project, registration.container.getPath());
+    scheduler.cancel(registration.project, registration.container.getPath());
+    watcher.unwatch(key);
+    release(key, registration);
+  }
+
+  /**
+   * Stops watching the external library directories.
+   */
+  public void dispose() {
+    watcher.dispose();
+    attachmentJob.cancel();
+  }
+
+  private static void release(String key, Registration registration) {
+    if (registration != null && registration.sharingKey != null) {
+      getSharedCache().release(registration.sharingKey, key);
+    }
+  }
+
+  private static SharedSnapshotCache getSharedCache() {
+    return DynamicClasspathPlugin.getDefault().getSharedCache();
+  }
+
+  private static void addChanges(LibraryDelta changes, IResourceDelta libDelta, DynamicClasspathContainer container) {
+    if (libDelta.getKind() != IResourceDelta.CHANGED) {
+      changes.setRescan();
+      return;
+    }
+
+    addChanges(changes, libDelta, 0, container);
+  }
+
+  private static void addChanges(LibraryDelta changes, IResourceDelta dirDelta, int depth, DynamicClasspathContainer container) {
+    for (IResourceDelta child : dirDelta.getAffectedChildren()) {
+      final IResource resource = child.getResource();
+      if (resource.getType() != IResource.FOLDER || depth >= container.getScanDepth() || container.isExcluded(resource.getName())) {
+        // folders that are not listed are entries of their parent directory like files
+        addChange(changes, child, container);
+      }
+      else if (child.getKind() != IResourceDelta.CHANGED) {
+        changes.setRescan();
+      }
+      else {
+        addChanges(changes, child, depth + 1, container);
+      }
+    }
+  }
+
+  private static void addChange(LibraryDelta changes, IResourceDelta delta, DynamicClasspathContainer container) {
+    if (delta.getKind() == IResourceDelta.CHANGED && (delta.getFlags() & RELEVANT_FLAGS) == 0) {
+      return;
+    }
+
+    final IPath location = delta.getResource().getLocation();
+    if (location == null || !container.isRelevant(location.lastSegment())) {
+      return;
+    }
+
+    final File file = location.toFile();
+    if (delta.getKind() == IResourceDelta.REMOVED) {
+      changes.addRemoved(file);
+    }
+    else {
+      changes.addChanged(file);
+    }
+  }
+
+  static String getKey(IJavaProject project, IPath containerPath) {
+    return project.getElementName() + '|' + containerPath.toPortableString();
+  }
+
+  private static class Registration {
+
+    private final IJavaProject              project;
+    private final DynamicClasspathContainer container;
+    private final String                    sharingKey;
+
+    Registration(IJavaProject project, DynamicClasspathContainer container, String sharingKey) {
+      this.project = project;
+      this.container = container;
+      this.sharingKey = sharingKey;
+    }
+  }
+}
@@ -0,0 +1,80 @@
+
+package ch.arktos.dcc;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+
+/**
+ * Changes to the files of a library directory that have to be applied to a resolved container. A file is either
+ * changed (which includes added) or removed, the last notification for a file wins.
+ */
+public class LibraryDelta {
+
+  private final Set<File> changed = new LinkedHashSet<File>();
+  private final Set<File> removed = new LinkedHashSet<File>();
+  private boolean         rescan;
+
+  /**
+   * Records an added or modified file.
+   * 
+   * @param file
+   *          the file
+   */
+  public void addChanged(File file) {
+    removed.remove(file);
+    changed.add(file);
+  }
+
+  /**
+   * Records a removed file.
+   * 
+   * @param file
+   *          the file
+   */
+  public void addRemoved(File file) {
+    changed.remove(file);
+    removed.add(file);
+  }
+
+  /**
+   * Folds a later delta into this one.
+   * 
+   * @param delta
+   *          the later delta, whose notifications win over the ones recorded so far
+   */
+  public void add(LibraryDelta delta) {
+    for (File file : delta.removed) {
+      addRemoved(file);
+    }
+    for (File file : delta.changed) {
+      addChanged(file);
+    }
+    rescan |= delta.rescan;
+  }
+
+  /**
+   * Marks the delta as not applicable incrementally, e.g. because a subdirectory has been added or removed.
+   */
+  public void setRescan() {
+    rescan = true;
+  }
+
+  public boolean isRescan() {
+    return rescan;
+  }
+
+  public boolean isEmpty() {
+    return !rescan && changed.isEmpty() && removed.isEmpty();
+  }
+
+  public Set<File> getChanged() {
+    return Collections.unmodifiableSet(changed);
+  }
+
+  public Set<File> getRemoved() {
+    return Collections.unmodifiableSet(removed);
+  }
+}
@@ -0,0 +1,109 @@
+
+package ch.arktos.dcc;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+
+
+/**
+ * A file or directory found while scanning a library directory, together with the attributes read once during the
+ * scan. Filters decide on these attributes instead of querying the file system again.
+ */
+public class LibraryFile {
+
+  private final File    file;
+  private final boolean directory;
+  private final long    size;
+  private final long    lastModified;
+
+  /**
+   * Instantiates a new library file.
+   * 
+   * @param file
+   *          the file
+   * @param directory
+   *          whether the file is a directory
+   * @param size
+   *          the size in bytes
+   * @param lastModified
+   *          the last modification time in milliseconds
+   */
+  public LibraryFile(File file, boolean directory, long size, long lastModified) {
+    this.file = file;
+    this.directory = directory;
+    this.size = size;
+    this.lastModified = lastModified;
+  }
+
+  /**
+   * Instantiates a new library file from the attributes read by a directory walk.
+   * 
+   * @param file
+   *          the file
+   * @param attributes
+   *          the attributes of the file
+   */
+  public LibraryFile(File file, BasicFileAttributes attributes) {
+    this(file, attributes.isDirectory(), attributes.size(), attributes.lastModifiedTime().toMillis());
+  }
+
+  /**
+   * Reads the attributes of a single file.
+   * 
+   * @param file
+   *          the file
+   * @return the library file or <code>null</code> if the file does not exist (anymore)
+   */
+  public static LibraryFile read(File file) {
+    try {
+      return new LibraryFile(file, Files.readAttributes(file.toPath(), BasicFileAttributes.class));
+    }
+    catch (IOException e) {
+      return null;
+    }
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  public String getName() {
+    return file.getName();
+  }
+
+  public boolean isDirectory() {
+    return directory;
+  }
+
+  public long getSize() {
+    return size;
+  }
+
+  public long getLastModified() {
+    return lastModified;
+  }
+
+  @Override
+  public int hashCode() {
+    return file.hashCode() ^ (int)(size ^ lastModified);
+  }
+
+  /**
+   * Two library files are equal if they denote the same file with the same attributes.
+   */
+  @Override
+  public boolean equals(Object obj) {
+    if (!(obj instanceof LibraryFile)) {
+      return false;
+    }
+    final LibraryFile other = (LibraryFile)obj;
+    return file.equals(other.file) && directory == other.directory && size == other.size && lastModified == other.lastModified;
+  }
+
+  @Override
+  public String toString() {
+    return file.toString();
+  }
+}
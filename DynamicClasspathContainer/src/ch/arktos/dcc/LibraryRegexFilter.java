@@ -21,7 +21,7 @@ import java.io.FilenameFilter;
  */
 public class LibraryRegexFilter implements FilenameFilter {
 
-  private final String _regex;
+  private final FileNameMatcher _matcher;
 
   /**
    * Instantiates a new library regex filter.
@@ -30,7 +30,7 @@ public class LibraryRegexFilter implements FilenameFilter {
    *          regular expression that is used to filter files
    */
   public LibraryRegexFilter(String regex) {
-    _regex = regex;
+    _matcher = FileNameMatcher.compile(regex);
   }
 
   /**
@@ -48,11 +48,22 @@ public class LibraryRegexFilter implements FilenameFilter {
       return false;
     }
 
-    File file = new File(dir.toString() + name);
+    File file = new File(dir, name);
     if (file.isDirectory()) {
       return false;
     }
 
-    return name.matches(_regex);
+    return _matcher.matches(name);
+  }
+
+  /**
+   * Accepts a scanned file without querying the file system again.
+   * 
+   * @param file
+   *          the scanned file
+   * @return true, if the file is a library
+   */
+  public boolean accept(LibraryFile file) {
+    return !file.isDirectory() && _matcher.matches(file.getName());
   }
 }
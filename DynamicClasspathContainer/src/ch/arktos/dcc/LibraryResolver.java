@@ -0,0 +1,252 @@
+
+package ch.arktos.dcc;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+
+/**
+ * Resolves the libraries and their attachments from a {@link LibraryScan} according to the regular expressions
+ * configured for a container. Truncated archives are left out until they change, see {@link ArchiveValidator}. The
+ * resolver does not depend on the Eclipse runtime.
+ */
+public class LibraryResolver {
+
+  private static final Comparator<ResolvedLibrary> BY_PATH = new Comparator<ResolvedLibrary>() {
+
+    @Override
+    public int compare(ResolvedLibrary library, ResolvedLibrary other) {
+      return library.getLibrary().getFile().getPath().compareTo(other.getLibrary().getFile().getPath());
+    }
+  };
+
+  private final LibraryRegexFilter libraryFilter;
+  private final String             libRegex;
+  private final String             srcRegex;
+  private final String             docRegex;
+  private final boolean            recursive;
+  private final VersionPolicy      versionPolicy;
+  private final boolean            manifestClassPath;
+
+  /**
+   * Instantiates a new library resolver.
+   * 
+   * @param libRegex
+   *          regular expression for the libraries
+   * @param srcRegex
+   *          regular expression for the source attachments, may be empty
+   * @param docRegex
+   *          regular expression for the javadoc attachments, may be empty
+   */
+  public LibraryResolver(String libRegex, String srcRegex, String docRegex) {
+    this(libRegex, srcRegex, docRegex, false);
+  }
+
+  /**
+   * Instantiates a new library resolver.
+   * 
+   * @param libRegex
+   *          regular expression for the libraries
+   * @param srcRegex
+   *          regular expression for the source attachments, may be empty
+   * @param docRegex
+   *          regular expression for the javadoc attachments, may be empty
+   * @param recursive
+   *          whether the libraries are collected from all scanned directories instead of the library directory only
+   */
+  public LibraryResolver(String libRegex, String srcRegex, String docRegex, boolean recursive) {
+    this(libRegex, srcRegex, docRegex, recursive, null);
+  }
+
+  /**
+   * Instantiates a new library resolver.
+   * 
+   * @param libRegex
+   *          regular expression for the libraries
+   * @param srcRegex
+   *          regular expression for the source attachments, may be empty
+   * @param docRegex
+   *          regular expression for the javadoc attachments, may be empty
+   * @param recursive
+   *          whether the libraries are collected from all scanned directories instead of the library directory only
+   * @param versionPolicy
+   *          the policy collapsing several versions of the same artifact, or <code>null</code> to keep all versions
+   */
+  public LibraryResolver(String libRegex, String srcRegex, String docRegex, boolean recursive, VersionPolicy versionPolicy) {
+    this(libRegex, srcRegex, docRegex, recursive, versionPolicy, false);
+  }
+
+  /**
+   * Instantiates a new library resolver.
+   * 
+   * @param libRegex
+   *          regular expression for the libraries
+   * @param srcRegex
+   *          regular expression for the source attachments, may be empty
+   * @param docRegex
+   *          regular expression for the javadoc attachments, may be empty
+   * @param recursive
+   *          whether the libraries are collected from all scanned directories instead of the library directory only
+   * @param versionPolicy
+   *          the policy collapsing several versions of the same artifact, or <code>null</code> to keep all versions
+   * @param manifestClassPath
+   *          whether the jars referenced by the <code>Class-Path</code> manifest headers of the libraries are added
+   */
+  public LibraryResolver(String libRegex, String srcRegex, String docRegex, boolean recursive, VersionPolicy versionPolicy, boolean manifestClassPath) {
+    this.libraryFilter = new LibraryRegexFilter(libRegex);
+    this.libRegex = libRegex;
+    this.srcRegex = srcRegex;
+    this.docRegex = docRegex;
+    this.recursive = recursive;
+    this.versionPolicy = versionPolicy;
+    this.manifestClassPath = manifestClassPath;
+  }
+
+  /**
+   * Resolves the libraries of a scan.
+   * 
+   * @param scan
+   *          the scan of the library directory
+   * @return the libraries sorted by their paths, independent of the order the file system lists them
+   */
+  public List<ResolvedLibrary> resolve(LibraryScan scan) {
+    return resolve(scan, null);
+  }
+
+  /**
+   * Resolves the libraries of a scan and reports the versions collapsed by the version policy.
+   * 
+   * @param scan
+   *          the scan of the library directory
+   * @param collapsed
+   *          receives the libraries dropped in favor of another version of the same artifact, may be
+   *          <code>null</code>
+   * @return the libraries sorted by their paths, independent of the order the file system lists them
+   */
+  public List<ResolvedLibrary> resolve(LibraryScan scan, List<ResolvedLibrary> collapsed) {
+    return resolve(scan, collapsed, true);
+  }
+
+  /**
+   * Resolves the libraries of a scan, optionally without looking up their attachments.
+   * 
+   * @param scan
+   *          the scan of the library directory
+   * @param collapsed
+   *          receives the libraries dropped in favor of another version of the same artifact, may be
+   *          <code>null</code>
+   * @param attachments
+   *          whether the source and javadoc attachments are looked up, otherwise none of the libraries has any
+   * @return the libraries sorted by their paths, independent of the order the file system lists them
+   */
+  public List<ResolvedLibrary> resolve(LibraryScan scan, List<ResolvedLibrary> collapsed, boolean attachments) {
+    long start = ResolutionStats.start();
+    final AttachmentIndex srcIndex = new AttachmentIndex(scan, attachments ? srcRegex : "");
+    final AttachmentIndex docIndex = new AttachmentIndex(scan, attachments ? docRegex : "");
+    ResolutionStats.stop(ResolutionStats.Phase.ATTACHMENTS, start);
+
+    start = ResolutionStats.start();
+    int rejected = 0;
+    List<ResolvedLibrary> libraries = new ArrayList<ResolvedLibrary>();
+    final Set<String> names = new HashSet<String>();
+    final Set<File> libraryDirs = new HashSet<File>();
+    for (File root : scan.getRoots()) {
+      // a library of a previous library directory hides the ones with the same name in the following directories
+      final Set<String> rootNames = new HashSet<String>();
+      for (File dir : getLibraryDirectories(scan, root)) {
+        libraryDirs.add(dir);
+        for (LibraryFile library : scan.getEntries(dir)) {
+          if (libraryFilter.accept(library) && !names.contains(library.getName()) && ArchiveValidator.isValid(library)) {
+            libraries.add(new ResolvedLibrary(library, srcIndex.get(library), docIndex.get(library)));
+            rootNames.add(library.getName());
+          }
+          else {
+            rejected++;
+          }
+        }
+      }
+      names.addAll(rootNames);
+    }
+    ResolutionStats.stop(ResolutionStats.Phase.FILTERING, start);
+    ResolutionStats.count(ResolutionStats.Counter.MATCHED, libraries.size());
+    ResolutionStats.count(ResolutionStats.Counter.REJECTED, rejected);
+    if (manifestClassPath) {
+      addReferencedLibraries(libraries, libraryDirs, srcIndex, docIndex);
+    }
+    // sorted first, so that the collapse does not depend on the order the file system lists the libraries in
+    Collections.sort(libraries, BY_PATH);
+    if (versionPolicy != null) {
+      libraries = versionPolicy.collapse(libraries, collapsed);
+    }
+    if (collapsed != null) {
+      Collections.sort(collapsed, BY_PATH);
+    }
+    return libraries;
+  }
+
+  /**
+   * Adds the jars referenced by the <code>Class-Path</code> manifest headers of the libraries, transitively. Jars in
+   * the library directories are left to the library filter, and every jar is visited once, so cyclic references end.
+   */
+  private static void addReferencedLibraries(List<ResolvedLibrary> libraries, Set<File> libraryDirs, AttachmentIndex srcIndex, AttachmentIndex docIndex) {
+    final Set<File> visited = new HashSet<File>();
+    final Deque<LibraryFile> queue = new ArrayDeque<LibraryFile>();
+    for (ResolvedLibrary library : libraries) {
+      visited.add(library.getLibrary().getFile());
+      queue.add(library.getLibrary());
+    }
+
+    while (!queue.isEmpty()) {
+      for (File file : ManifestClassPath.getReferencedFiles(queue.poll())) {
+        if (!visited.add(file) || libraryDirs.contains(file.getParentFile())) {
+          continue;
+        }
+        final LibraryFile library = LibraryFile.read(file);
+        if (library != null && !library.isDirectory() && ArchiveValidator.isValid(library)) {
+          libraries.add(new ResolvedLibrary(library, srcIndex.get(library), docIndex.get(library)));
+          queue.add(library);
+        }
+      }
+    }
+  }
+
+  private List<File> getLibraryDirectories(LibraryScan scan, File root) {
+    if (!recursive) {
+      return Collections.singletonList(root);
+    }
+
+    final List<File> dirs = new ArrayList<File>();
+    for (LibraryFile dir : scan.getDirectories()) {
+      if (root.equals(scan.getRootOf(dir.getFile()))) {
+        dirs.add(dir.getFile());
+      }
+    }
+    return dirs;
+  }
+
+  /**
+   * Checks whether a file with the given name can affect the resolution, i.e. whether it is a library or an
+   * attachment.
+   * 
+   * @param name
+   *          the file name
+   * @return true, if the file is relevant
+   */
+  public boolean isRelevant(String name) {
+    return FileNameMatcher.compile(libRegex).matches(name) || isAttachment(name, srcRegex) || isAttachment(name, docRegex);
+  }
+
+  private static boolean isAttachment(String name, String regex) {
+    if (regex == null || regex.equals("")) {
+      return false;
+    }
+    return FileNameMatcher.compile(AttachmentIndex.getSuffixRegex(regex)).matchStart(name) > 0;
+  }
+}
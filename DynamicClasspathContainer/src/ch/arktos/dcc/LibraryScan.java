@@ -0,0 +1,650 @@
+
+package ch.arktos.dcc;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+
+/**
+ * The result of scanning a library directory and its direct subdirectories. The directory tree is walked once and
+ * the type, size and modification time of every entry are read in the same pass, so the filters applied afterwards
+ * do not have to stat the files again.
+ * <p>
+ * A recursive scan lists the subdirectories up to a configurable depth, skipping the directories whose names match an
+ * exclude pattern. Its directories are listed in parallel on a fork/join pool sized to the number of processors, and
+ * the directories and their entries are sorted by path, so the result does not depend on the order of the listing.
+ * <p>
+ * A scan may combine several library directories, which are scanned concurrently. Their directories and entries are
+ * kept in the order of the library directories.
+ */
+public class LibraryScan {
+
+  /** The depth of a scan of the library directory and its direct subdirectories. */
+  public final static int                      DEFAULT_DEPTH = 1;
+
+  private static final ForkJoinPool            POOL          = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+  private static final Comparator<LibraryFile> BY_PATH       = new Comparator<LibraryFile>() {
+
+    @Override
+    public int compare(LibraryFile file, LibraryFile other) {
+      return file.getFile().compareTo(other.getFile());
+    }
+  };
+
+  private final List<File>                     roots;
+  private final int                            maxDepth;
+  private final String                         excludeRegex;
+  private final FileNameMatcher                excludeMatcher;
+  private final Map<File, List<LibraryFile>>   entries       = new LinkedHashMap<File, List<LibraryFile>>();
+  private final List<LibraryFile>              directories   = new ArrayList<LibraryFile>();
+  private final Map<File, Integer>             failures      = new HashMap<File, Integer>();
+
+  private LibraryScan(List<File> roots, int maxDepth, String excludeRegex) {
+    this.roots = roots;
+    this.maxDepth = maxDepth;
+    this.excludeRegex = excludeRegex == null ? "" : excludeRegex;
+    this.excludeMatcher = this.excludeRegex.isEmpty() ? null : FileNameMatcher.compile(this.excludeRegex);
+  }
+
+  /**
+   * Scans the library directory and its direct subdirectories.
+   * 
+   * @param root
+   *          the library directory
+   * @return the scan, which is empty if the directory does not exist
+   */
+  public static LibraryScan scan(File root) {
+    return scan(root, null);
+  }
+
+  /**
+   * Scans the library directory and its direct subdirectories, reporting the progress.
+   * 
+   * @param root
+   *          the library directory
+   * @param progress
+   *          receives the scanned directories and is asked for cancellation, may be <code>null</code>
+   * @return the scan, which is empty if the directory does not exist and incomplete if the scan has been canceled
+   */
+  public static LibraryScan scan(File root, Progress progress) {
+    return scan(root, DEFAULT_DEPTH, null, progress);
+  }
+
+  /**
+   * Scans the library directory and its subdirectories up to the given depth, reporting the progress. Deeper scans are
+   * walked in parallel.
+   * 
+   * @param root
+   *          the library directory
+   * @param maxDepth
+   *          the depth of the deepest directories to list, where 1 lists the direct subdirectories
+   * @param excludeRegex
+   *          regular expression for the names of the subdirectories not to list, may be empty or <code>null</code>
+   * @param progress
+   *          receives the scanned directories and is asked for cancellation, may be <code>null</code>
+   * @return the scan, which is empty if the directory does not exist and incomplete if the scan has been canceled
+   */
+  public static LibraryScan scan(File root, int maxDepth, String excludeRegex, Progress progress) {
+    final long start = ResolutionStats.start();
+    try {
+      return walk(root, maxDepth, excludeRegex, progress);
+    }
+    finally {
+      ResolutionStats.stop(ResolutionStats.Phase.LISTING, start);
+    }
+  }
+
+  private static LibraryScan walk(File root, int maxDepth, String excludeRegex, Progress progress) {
+    final LibraryScan scan = new LibraryScan(Collections.singletonList(root), Math.max(maxDepth, 0), excludeRegex);
+    if (scan.maxDepth <= DEFAULT_DEPTH) {
+      try {
+        Files.walkFileTree(root.toPath(), EnumSet.of(FileVisitOption.FOLLOW_LINKS), scan.maxDepth + 1, scan.new Visitor(root, progress));
+      }
+      catch (IOException e) {
+        // keep what has been collected so far
+      }
+      return scan;
+    }
+
+    final BasicFileAttributes attributes;
+    try {
+      attributes = Files.readAttributes(root.toPath(), BasicFileAttributes.class);
+    }
+    catch (IOException e) {
+      return scan;
+    }
+    if (attributes.isDirectory()) {
+      final ConcurrentMap<File, Listing> listings = new ConcurrentHashMap<File, Listing>();
+      final ListingTask task = new ListingTask(scan, new LibraryFile(root, attributes), listings, progress);
+      if (ForkJoinTask.inForkJoinPool()) {
+        task.invoke();
+      }
+      else {
+        POOL.invoke(task);
+      }
+      scan.addAll(listings);
+    }
+    return scan;
+  }
+
+  /**
+   * Scans several library directories concurrently and merges the results in the given order.
+   * 
+   * @param roots
+   *          the library directories
+   * @param maxDepth
+   *          the depth of the deepest directories to list, where 1 lists the direct subdirectories
+   * @param excludeRegex
+   *          regular expression for the names of the subdirectories not to list, may be empty or <code>null</code>
+   * @param progress
+   *          receives the scanned directories and is asked for cancellation, may be <code>null</code>
+   * @return the merged scan
+   */
+  public static LibraryScan scan(final List<File> roots, final int maxDepth, final String excludeRegex, Progress progress) {
+    if (roots.size() == 1) {
+      return scan(roots.get(0), maxDepth, excludeRegex, progress);
+    }
+
+    final long start = ResolutionStats.start();
+    final Progress sharedProgress = progress == null ? null : new SynchronizedProgress(progress);
+    final LibraryScan[] scans = new LibraryScan[roots.size()];
+    final List<RecursiveAction> tasks = new ArrayList<RecursiveAction>(roots.size());
+    for (int i = 0; i < scans.length; i++) {
+      final int index = i;
+      tasks.add(new RecursiveAction() {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected void compute() {
+          scans[index] = walk(roots.get(index), maxDepth, excludeRegex, sharedProgress);
+        }
+      });
+    }
+    POOL.invoke(new RecursiveAction() {
+
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected void compute() {
+        invokeAll(tasks);
+      }
+    });
+
+    final LibraryScan merged = new LibraryScan(new ArrayList<File>(roots), Math.max(maxDepth, 0), excludeRegex);
+    for (LibraryScan scan : scans) {
+      merged.directories.addAll(scan.directories);
+      merged.entries.putAll(scan.entries);
+      merged.failures.putAll(scan.failures);
+    }
+    ResolutionStats.stop(ResolutionStats.Phase.LISTING, start);
+    return merged;
+  }
+
+  /**
+   * Returns the first library directory.
+   * 
+   * @return the library directory
+   */
+  public File getRoot() {
+    return roots.get(0);
+  }
+
+  /**
+   * Returns the library directories in the order of their priority.
+   * 
+   * @return the library directories
+   */
+  public List<File> getRoots() {
+    return Collections.unmodifiableList(roots);
+  }
+
+  /**
+   * Returns the depth of the deepest directories that have been listed.
+   * 
+   * @return the maximum depth, where 1 stands for the direct subdirectories of the library directory
+   */
+  public int getMaxDepth() {
+    return maxDepth;
+  }
+
+  /**
+   * Returns the regular expression for the names of the subdirectories that have not been listed.
+   * 
+   * @return the regular expression, empty if no directory is excluded
+   */
+  public String getExcludeRegex() {
+    return excludeRegex;
+  }
+
+  /**
+   * Returns the scanned directories, i.e. every library directory followed by its listed subdirectories.
+   * 
+   * @return the directories in the order they have been listed
+   */
+  public List<LibraryFile> getDirectories() {
+    return Collections.unmodifiableList(directories);
+  }
+
+  /**
+   * Returns the entries of a scanned directory.
+   * 
+   * @param dir
+   *          the library directory or one of its direct subdirectories
+   * @return the files and directories in the order they have been listed
+   */
+  public List<LibraryFile> getEntries(File dir) {
+    final List<LibraryFile> dirEntries = entries.get(dir);
+    return dirEntries == null ? Collections.<LibraryFile> emptyList() : Collections.unmodifiableList(dirEntries);
+  }
+
+  /**
+   * Returns the number of entries listed in a scanned directory, including the ones whose attributes could not be
+   * read (e.g. broken links) and which are therefore not returned by {@link #getEntries(File)}.
+   * 
+   * @param dir
+   *          the library directory or one of its direct subdirectories
+   * @return the number of entries
+   */
+  public int getEntryCount(File dir) {
+    final Integer failed = failures.get(dir);
+    return getEntries(dir).size() + (failed == null ? 0 : failed.intValue());
+  }
+
+  /**
+   * Creates a copy of this scan with changes applied, reading the attributes of the changed files only. Changes to
+   * files outside the scanned directories are ignored.
+   * 
+   * @param delta
+   *          the changed and removed files
+   * @return the patched scan or <code>null</code> if the delta adds or removes a subdirectory of the library directory
+   *         and a new scan is required
+   */
+  public LibraryScan patch(LibraryDelta delta) {
+    if (delta.isRescan()) {
+      return null;
+    }
+
+    final LibraryScan patched = new LibraryScan(roots, maxDepth, excludeRegex);
+    patched.directories.addAll(directories);
+    patched.failures.putAll(failures);
+    for (Map.Entry<File, List<LibraryFile>> dirEntries : entries.entrySet()) {
+      patched.entries.put(dirEntries.getKey(), new ArrayList<LibraryFile>(dirEntries.getValue()));
+    }
+
+    for (File file : delta.getRemoved()) {
+      if (entries.containsKey(file)) {
+        return null;
+      }
+      patched.remove(file);
+    }
+    for (File file : delta.getChanged()) {
+      final List<LibraryFile> dirEntries = patched.entries.get(file.getParentFile());
+      if (dirEntries == null) {
+        continue;
+      }
+
+      final LibraryFile changed = LibraryFile.read(file);
+      if (changed == null) {
+        patched.remove(file);
+      }
+      else if (changed.isDirectory() && isListed(file)) {
+        return null;
+      }
+      else if (!patched.replace(changed)) {
+        dirEntries.add(changed);
+      }
+    }
+    return patched;
+  }
+
+  /**
+   * Checks whether a subdirectory of a listed directory is listed as well.
+   */
+  private boolean isListed(File dir) {
+    final File root = getRootOf(dir);
+    if (root == null) {
+      return false;
+    }
+    final int depth = root.toPath().relativize(dir.toPath()).getNameCount();
+    return depth <= maxDepth && (excludeMatcher == null || !excludeMatcher.matches(dir.getName()));
+  }
+
+  /**
+   * Returns the library directory a scanned file belongs to.
+   * 
+   * @param file
+   *          the file or directory, which may be a library directory itself
+   * @return the library directory or <code>null</code> if the file is not inside one of the library directories
+   */
+  public File getRootOf(File file) {
+    final Path path = file.toPath();
+    for (File root : roots) {
+      if (path.startsWith(root.toPath())) {
+        return root;
+      }
+    }
+    return null;
+  }
+
+  private void remove(File file) {
+    final List<LibraryFile> dirEntries = entries.get(file.getParentFile());
+    if (dirEntries != null) {
+      for (int i = 0; i < dirEntries.size(); i++) {
+        if (dirEntries.get(i).getFile().equals(file)) {
+          dirEntries.remove(i);
+          return;
+        }
+      }
+    }
+  }
+
+  private boolean replace(LibraryFile file) {
+    final List<LibraryFile> dirEntries = entries.get(file.getFile().getParentFile());
+    for (int i = 0; i < dirEntries.size(); i++) {
+      if (dirEntries.get(i).getFile().equals(file.getFile())) {
+        dirEntries.set(i, file);
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void add(File dir, LibraryFile file) {
+    List<LibraryFile> dirEntries = entries.get(dir);
+    if (dirEntries == null) {
+      dirEntries = new ArrayList<LibraryFile>();
+      entries.put(dir, dirEntries);
+    }
+    dirEntries.add(file);
+  }
+
+  /**
+   * Adds the listings of a parallel scan, sorted by path.
+   */
+  private void addAll(Map<File, Listing> listings) {
+    final List<LibraryFile> listed = new ArrayList<LibraryFile>(listings.size());
+    for (Listing listing : listings.values()) {
+      listed.add(listing.directory);
+    }
+    Collections.sort(listed, BY_PATH);
+
+    for (LibraryFile directory : listed) {
+      final Listing listing = listings.get(directory.getFile());
+      Collections.sort(listing.entries, BY_PATH);
+      directories.add(directory);
+      entries.put(directory.getFile(), listing.entries);
+      if (listing.failures > 0) {
+        failures.put(directory.getFile(), Integer.valueOf(listing.failures));
+      }
+    }
+  }
+
+  /**
+   * Writes the scan in a compact binary form. Entries are written with their names only, since their directory is
+   * known.
+   * 
+   * @param out
+   *          the output
+   * @throws IOException
+   *           if the scan cannot be written
+   */
+  public void write(DataOutput out) throws IOException {
+    out.writeInt(roots.size());
+    for (File root : roots) {
+      out.writeUTF(root.getPath());
+    }
+    out.writeInt(maxDepth);
+    out.writeUTF(excludeRegex);
+    out.writeInt(directories.size());
+    for (LibraryFile directory : directories) {
+      out.writeUTF(directory.getFile().getPath());
+      out.writeLong(directory.getLastModified());
+      final Integer failed = failures.get(directory.getFile());
+      out.writeInt(failed == null ? 0 : failed.intValue());
+
+      final List<LibraryFile> dirEntries = getEntries(directory.getFile());
+      out.writeInt(dirEntries.size());
+      for (LibraryFile file : dirEntries) {
+        out.writeUTF(file.getName());
+        out.writeBoolean(file.isDirectory());
+        out.writeLong(file.getSize());
+        out.writeLong(file.getLastModified());
+      }
+    }
+  }
+
+  /**
+   * Reads a scan written by {@link #write(DataOutput)}.
+   * 
+   * @param in
+   *          the input
+   * @return the scan
+   * @throws IOException
+   *           if the scan cannot be read
+   */
+  public static LibraryScan read(DataInput in) throws IOException {
+    final int rootCount = in.readInt();
+    final List<File> roots = new ArrayList<File>(rootCount);
+    for (int i = 0; i < rootCount; i++) {
+      roots.add(new File(in.readUTF()));
+    }
+    final LibraryScan scan = new LibraryScan(roots, in.readInt(), in.readUTF());
+    final int directoryCount = in.readInt();
+    for (int i = 0; i < directoryCount; i++) {
+      final File dir = new File(in.readUTF());
+      scan.directories.add(new LibraryFile(dir, true, 0, in.readLong()));
+      final int failed = in.readInt();
+      if (failed > 0) {
+        scan.failures.put(dir, Integer.valueOf(failed));
+      }
+
+      final int entryCount = in.readInt();
+      final List<LibraryFile> dirEntries = new ArrayList<LibraryFile>(entryCount);
+      for (int j = 0; j < entryCount; j++) {
+        dirEntries.add(new LibraryFile(new File(dir, in.readUTF()), in.readBoolean(), in.readLong(), in.readLong()));
+      }
+      scan.entries.put(dir, dirEntries);
+    }
+    return scan;
+  }
+
+  /**
+   * Receives the progress of a scan.
+   */
+  public interface Progress {
+
+    /**
+     * Called before a directory is listed.
+     * 
+     * @param dir
+     *          the directory
+     */
+    void scanning(File dir);
+
+    /**
+     * Checks whether the scan should be stopped.
+     * 
+     * @return true, if the scan has been canceled
+     */
+    boolean isCanceled();
+  }
+
+  /**
+   * Serializes the progress reported by concurrent scans of several library directories.
+   */
+  private static class SynchronizedProgress implements Progress {
+
+    private final Progress progress;
+
+    SynchronizedProgress(Progress progress) {
+      this.progress = progress;
+    }
+
+    @Override
+    public synchronized void scanning(File dir) {
+      progress.scanning(dir);
+    }
+
+    @Override
+    public synchronized boolean isCanceled() {
+      return progress.isCanceled();
+    }
+  }
+
+  private class Visitor extends SimpleFileVisitor<Path> {
+
+    private final File     root;
+    private final Progress progress;
+
+    Visitor(File root, Progress progress) {
+      this.root = root;
+      this.progress = progress;
+    }
+
+    @Override
+    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+      final File file = dir.toFile();
+      final LibraryFile directory = new LibraryFile(file, attrs);
+      if (!file.equals(root) && !isListed(file)) {
+        add(file.getParentFile(), directory);
+        return FileVisitResult.SKIP_SUBTREE;
+      }
+
+      if (progress != null) {
+        if (progress.isCanceled()) {
+          return FileVisitResult.TERMINATE;
+        }
+        progress.scanning(file);
+      }
+
+      directories.add(directory);
+      entries.put(file, new ArrayList<LibraryFile>());
+      if (!file.equals(root)) {
+        add(file.getParentFile(), directory);
+      }
+      return FileVisitResult.CONTINUE;
+    }
+
+    @Override
+    public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) {
+      if (progress != null && progress.isCanceled()) {
+        return FileVisitResult.TERMINATE;
+      }
+
+      final File file = path.toFile();
+      if (!file.equals(root)) {
+        add(file.getParentFile(), new LibraryFile(file, attrs));
+      }
+      return FileVisitResult.CONTINUE;
+    }
+
+    @Override
+    public FileVisitResult visitFileFailed(Path path, IOException e) {
+      final File dir = path.toFile().getParentFile();
+      final Integer failed = failures.get(dir);
+      failures.put(dir, failed == null ? 1 : failed.intValue() + 1);
+      return FileVisitResult.CONTINUE;
+    }
+  }
+
+  /**
+   * The entries of a directory listed by a {@link ListingTask}.
+   */
+  private static class Listing {
+
+    private final LibraryFile       directory;
+    private final List<LibraryFile> entries;
+    private final int               failures;
+
+    Listing(LibraryFile directory, List<LibraryFile> entries, int failures) {
+      this.directory = directory;
+      this.entries = entries;
+      this.failures = failures;
+    }
+  }
+
+  /**
+   * Lists a directory and forks the listing of its subdirectories.
+   */
+  private static class ListingTask extends RecursiveAction {
+
+    private static final long                  serialVersionUID = 1L;
+
+    private final LibraryScan                  scan;
+    private final LibraryFile                  directory;
+    private final ConcurrentMap<File, Listing> listings;
+    private final Progress                     progress;
+
+    ListingTask(LibraryScan scan, LibraryFile directory, ConcurrentMap<File, Listing> listings, Progress progress) {
+      this.scan = scan;
+      this.directory = directory;
+      this.listings = listings;
+      this.progress = progress;
+    }
+
+    @Override
+    protected void compute() {
+      if (progress != null) {
+        // the progress is usually reported to a monitor, which is not thread-safe
+        synchronized (progress) {
+          if (progress.isCanceled()) {
+            return;
+          }
+          progress.scanning(directory.getFile());
+        }
+      }
+
+      final List<LibraryFile> dirEntries = new ArrayList<LibraryFile>();
+      final List<ListingTask> subtasks = new ArrayList<ListingTask>();
+      int failed = 0;
+      try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory.getFile().toPath())) {
+        for (Path path : stream) {
+          final LibraryFile file;
+          try {
+            file = new LibraryFile(path.toFile(), Files.readAttributes(path, BasicFileAttributes.class));
+          }
+          catch (IOException e) {
+            failed++;
+            continue;
+          }
+
+          dirEntries.add(file);
+          if (file.isDirectory() && scan.isListed(file.getFile())) {
+            subtasks.add(new ListingTask(scan, file, listings, progress));
+          }
+        }
+      }
+      catch (IOException | DirectoryIteratorException e) {
+        // keep what has been listed so far
+      }
+
+      listings.put(directory.getFile(), new Listing(directory, dirEntries, failed));
+      invokeAll(subtasks);
+    }
+  }
+}
@@ -0,0 +1,112 @@
+
+package ch.arktos.dcc;
+
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.JavaModelException;
+
+
+/**
+ * Collects the {@link LibraryDelta}s reported for a container and applies them in one batch to the container last
+ * published for the project. The result is only published if the entries changed. The update runs as a job since
+ * the workspace is locked while resource deltas are delivered.
+ */
+public class LibraryUpdateJob extends Job {
+
+  private final LibraryChangeListener listener;
+  private final IJavaProject          project;
+  private final IPath                 containerPath;
+
+  private LibraryDelta                pending;
+  private int                         pendingEvents;
+  private long                        firstEvent;
+
+  /**
+   * Instantiates a new library update job.
+   * 
+   * @param listener
+   *          the listener tracking the published containers
+   * @param project
+   *          the project referencing the container
+   * @param containerPath
+   *          the container path
+   */
+  public LibraryUpdateJob(LibraryChangeListener listener, IJavaProject project, IPath containerPath) {
+    super(Messages.UpdateJobName);
+    this.listener = listener;
+    this.project = project;
+    this.containerPath = containerPath;
+    setSystem(true);
+  }
+
+  /**
+   * Folds the changes into the pending batch and schedules the job at the end of the quiet period, but not later than
+   * the maximum latency after the first pending change.
+   * 
+   * @param delta
+   *          the changes
+   * @param quietPeriod
+   *          the quiet period in milliseconds
+   * @param maxLatency
+   *          the maximum latency in milliseconds
+   */
+  public synchronized void add(LibraryDelta delta, long quietPeriod, long maxLatency) {
+    final long now = System.currentTimeMillis();
+    if (pending == null) {
+      pending = new LibraryDelta();
+      pendingEvents = 0;
+      firstEvent = now;
+    }
+    pending.add(delta);
+    pendingEvents++;
+
+    // schedule() ignores a sleeping job, so its delay is restarted with wakeUp(), and a running job runs again once
+    // it is finished
+    final long delay = Math.max(0, Math.min(quietPeriod, firstEvent + maxLatency - now));
+    if (getState() == SLEEPING) {
+      wakeUp(delay);
+    }
+    else {
+      schedule(delay);
+    }
+  }
+
+  @Override
+  protected IStatus run(IProgressMonitor monitor) {
+    final LibraryDelta delta;
+    final int folded;
+    synchronized (this) {
+      delta = pending;
+      folded = pendingEvents;
+      pending = null;
+    }
+    if (delta == null) {
+      return Status.OK_STATUS;
+    }
+
+    final DynamicClasspathContainer container = listener.getContainer(project, containerPath);
+    if (container == null) {
+      return Status.OK_STATUS;
+    }
+
+    ResolutionStats.count(ResolutionStats.Counter.BATCHED_UPDATES);
+    ResolutionStats.count(ResolutionStats.Counter.FOLDED_CHANGES, folded);
+    if (DynamicClasspathPlugin.isTracing()) {
+      DynamicClasspathPlugin.trace("Updating " + containerPath + " of " + project.getElementName() + " with " + folded + " folded changes");
+    }
+    final DynamicClasspathContainer updated = container.update(delta);
+    if (updated != null) {
+      try {
+        listener.publish(project, updated, monitor);
+      }
+      catch (JavaModelException e) {
+        return e.getStatus();
+      }
+    }
+    return Status.OK_STATUS;
+  }
+}
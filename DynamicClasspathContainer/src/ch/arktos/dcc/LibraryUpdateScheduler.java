@@ -0,0 +1,103 @@
+
+package ch.arktos.dcc;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.jdt.core.IJavaProject;
+
+
+/**
+ * Coalesces bursts of library changes. The changes reported for a container are collected by one
+ * {@link LibraryUpdateJob} per container, which only runs once no further change has been reported for the quiet
+ * period. To keep the classpath from lagging behind forever while changes keep coming in, the update is applied at
+ * the latest after the maximum latency, counted from the first change folded into it.
+ * <p>
+ * The defaults can be overridden with the system properties <code>ch.arktos.dcc.quietPeriod</code> and
+ * <code>ch.arktos.dcc.maxLatency</code> (in milliseconds). While the resolution is traced, the number of changes folded
+ * into each update is traced and summed up in the {@link ResolutionStats}.
+ */
+public class LibraryUpdateScheduler {
+
+  /** The default quiet period in milliseconds. */
+  public final static long                              DEFAULT_QUIET_PERIOD = 500;
+
+  /** The default maximum latency in milliseconds. */
+  public final static long                              DEFAULT_MAX_LATENCY  = 5000;
+
+  private final LibraryChangeListener                   listener;
+  private final ConcurrentMap<String, LibraryUpdateJob> jobs                 = new ConcurrentHashMap<String, LibraryUpdateJob>();
+
+  private volatile long                                 quietPeriod          = Long.getLong("ch.arktos.dcc.quietPeriod", DEFAULT_QUIET_PERIOD).longValue();
+  private volatile long                                 maxLatency           = Long.getLong("ch.arktos.dcc.maxLatency", DEFAULT_MAX_LATENCY).longValue();
+
+  /**
+   * Instantiates a new library update scheduler.
+   * 
+   * @param listener
+   *          the listener tracking the published containers
+   */
+  public LibraryUpdateScheduler(LibraryChangeListener listener) {
+    this.listener = listener;
+  }
+
+  /**
+   * Folds the changes into the pending update of the container and (re)schedules it.
+   * 
+   * @param project
+   *          the project referencing the container
+   * @param containerPath
+   *          the container path
+   * @param delta
+   *          the changes
+   */
+  public void schedule(IJavaProject project, IPath containerPath, LibraryDelta delta) {
+    final String key = LibraryChangeListener.getKey(project, containerPath);
+    LibraryUpdateJob job = jobs.get(key);
+    if (job == null) {
+      job = new LibraryUpdateJob(listener, project, containerPath);
+      final LibraryUpdateJob previous = jobs.putIfAbsent(key, job);
+      if (previous != null) {
+        job = previous;
+      }
+    }
+
+    job.add(delta, quietPeriod, maxLatency);
+  }
+
+  /**
+   * Cancels the pending update of a container that is no longer tracked.
+   * 
+   * @param project
+   *          the project referencing the container
+   * @param containerPath
+   *          the container path
+   */
+  public void cancel(IJavaProject project, IPath containerPath) {
+    final LibraryUpdateJob job = jobs.remove(LibraryChangeListener.getKey(project, containerPath));
+    if (job != null) {
+      job.cancel();
+    }
+  }
+
+  /**
+   * Sets the time without further changes after which the pending changes of a container are applied.
+   * 
+   * @param quietPeriod
+   *          the quiet period in milliseconds
+   */
+  public void setQuietPeriod(long quietPeriod) {
+    this.quietPeriod = quietPeriod;
+  }
+
+  /**
+   * Sets the maximum time the first of the pending changes of a container waits to be applied.
+   * 
+   * @param maxLatency
+   *          the maximum latency in milliseconds
+   */
+  public void setMaxLatency(long maxLatency) {
+    this.maxLatency = maxLatency;
+  }
+}
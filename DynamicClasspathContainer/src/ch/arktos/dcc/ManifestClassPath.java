@@ -0,0 +1,218 @@
+
+package ch.arktos.dcc;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+
+/**
+ * Reads the <code>Class-Path</code> header of the manifest of a jar. The central directory is located with the end of
+ * central directory record, see {@link ArchiveValidator}, and only the manifest entry is read and inflated, the rest
+ * of the archive is never touched.
+ * <p>
+ * The headers are cached per jar together with its size and modification time, so a jar is only read again once it
+ * changed. Archives using zip64 extensions, an unusually large central directory or data prepended to the archive are
+ * read with a {@link JarFile}.
+ */
+public class ManifestClassPath {
+
+  private static final int                            CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+  private static final int                            LOCAL_HEADER_SIGNATURE   = 0x04034b50;
+  private static final int                            CENTRAL_HEADER_SIZE      = 46;
+  private static final int                            LOCAL_HEADER_SIZE        = 30;
+  private static final int                            MAX_DIRECTORY_SIZE       = 16 * 1024 * 1024;
+  private static final int                            MAX_MANIFEST_SIZE        = 1024 * 1024;
+  private static final int                            STORED                   = 0;
+  private static final int                            DEFLATED                 = 8;
+  private static final byte[]                         MANIFEST_NAME            = JarFile.MANIFEST_NAME.getBytes(StandardCharsets.US_ASCII);
+
+  private static final ConcurrentMap<File, ClassPath> CLASS_PATHS              = new ConcurrentHashMap<File, ClassPath>();
+
+  /**
+   * Returns the files referenced by the <code>Class-Path</code> manifest header of a jar.
+   *
+   * @param jar
+   *          the jar with its current attributes
+   * @return the referenced files, relative references are resolved against the directory of the jar
+   */
+  public static List<File> getReferencedFiles(LibraryFile jar) {
+    if (jar.isDirectory() || !ArchiveValidator.isArchive(jar.getName())) {
+      return Collections.emptyList();
+    }
+
+    final ClassPath cached = CLASS_PATHS.get(jar.getFile());
+    if (cached != null && cached.jar.equals(jar)) {
+      return cached.files;
+    }
+
+    final String header = readHeader(jar);
+    if (header == null) {
+      // changed since its attributes have been read
+      return Collections.emptyList();
+    }
+    final ClassPath classPath = new ClassPath(jar, resolve(jar.getFile().getParentFile(), header));
+    CLASS_PATHS.put(jar.getFile(), classPath);
+    return classPath.files;
+  }
+
+  private static List<File> resolve(File dir, String header) {
+    if (header.isEmpty()) {
+      return Collections.emptyList();
+    }
+
+    final List<File> files = new ArrayList<File>();
+    final URI base = dir.toURI();
+    for (String reference : header.trim().split("\\s+")) {
+      try {
+        final URI uri = base.resolve(new URI(reference));
+        if ("file".equals(uri.getScheme())) {
+          files.add(new File(uri).toPath().normalize().toFile());
+        }
+      }
+      catch (URISyntaxException | IllegalArgumentException e) {
+        // an invalid reference is ignored like the Java launcher does
+      }
+    }
+    return files;
+  }
+
+  /**
+   * Reads the header from the manifest entry found in the central directory.
+   *
+   * @return the header, empty if there is none, or <code>null</code> if the jar does not match its attributes
+   */
+  private static String readHeader(LibraryFile jar) {
+    try (FileChannel channel = FileChannel.open(jar.getFile().toPath(), StandardOpenOption.READ)) {
+      final long size = channel.size();
+      if (size != jar.getSize()) {
+        return null;
+      }
+
+      final long[] directory = ArchiveValidator.findCentralDirectory(channel, size);
+      if (directory == null) {
+        return "";
+      }
+      if (directory[0] < 0 || directory[1] > MAX_DIRECTORY_SIZE) {
+        return readHeaderWithJarFile(jar.getFile());
+      }
+
+      final ByteBuffer entries = ArchiveValidator.read(channel, directory[0], (int)directory[1]);
+      if (entries.capacity() >= 4 && entries.getInt(0) != CENTRAL_HEADER_SIGNATURE) {
+        // the offsets do not start at the beginning of the file, e.g. because of a prepended launcher
+        return readHeaderWithJarFile(jar.getFile());
+      }
+      for (int pos = 0; pos + CENTRAL_HEADER_SIZE <= entries.capacity() && entries.getInt(pos) == CENTRAL_HEADER_SIGNATURE;) {
+        final int nameLength = entries.getShort(pos + 28) & 0xFFFF;
+        final int extraLength = entries.getShort(pos + 30) & 0xFFFF;
+        final int commentLength = entries.getShort(pos + 32) & 0xFFFF;
+        if (isManifest(entries, pos + CENTRAL_HEADER_SIZE, nameLength)) {
+          final int method = entries.getShort(pos + 10) & 0xFFFF;
+          final long compressedSize = entries.getInt(pos + 20) & 0xFFFFFFFFL;
+          final long uncompressedSize = entries.getInt(pos + 24) & 0xFFFFFFFFL;
+          final long localHeader = entries.getInt(pos + 42) & 0xFFFFFFFFL;
+          if (compressedSize > MAX_MANIFEST_SIZE || uncompressedSize > MAX_MANIFEST_SIZE || method != STORED && method != DEFLATED) {
+            return readHeaderWithJarFile(jar.getFile());
+          }
+          final byte[] manifest = readEntry(channel, localHeader, method, (int)compressedSize, (int)uncompressedSize);
+          return manifest != null ? getHeader(manifest) : readHeaderWithJarFile(jar.getFile());
+        }
+        pos += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+      }
+      return "";
+    }
+    catch (IOException | DataFormatException e) {
+      // a jar which cannot be read does not reference anything
+      return "";
+    }
+  }
+
+  private static boolean isManifest(ByteBuffer entries, int name, int nameLength) {
+    if (nameLength != MANIFEST_NAME.length || name + nameLength > entries.capacity()) {
+      return false;
+    }
+    for (int i = 0; i < nameLength; i++) {
+      if (Character.toUpperCase((char)entries.get(name + i)) != MANIFEST_NAME[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static byte[] readEntry(FileChannel channel, long localHeader, int method, int compressedSize, int uncompressedSize) throws IOException, DataFormatException {
+    final ByteBuffer header = ArchiveValidator.read(channel, localHeader, LOCAL_HEADER_SIZE);
+    if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+      // the offsets do not start at the beginning of the file, e.g. because of a prepended launcher
+      return null;
+    }
+    final long data = localHeader + LOCAL_HEADER_SIZE + (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF);
+    final byte[] compressed = ArchiveValidator.read(channel, data, compressedSize).array();
+    if (method == STORED) {
+      return compressed;
+    }
+
+    final Inflater inflater = new Inflater(true);
+    try {
+      inflater.setInput(compressed);
+      final byte[] uncompressed = new byte[uncompressedSize];
+      int length = 0;
+      while (length < uncompressedSize && !inflater.finished()) {
+        final int inflated = inflater.inflate(uncompressed, length, uncompressedSize - length);
+        if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          break;
+        }
+        length += inflated;
+      }
+      return length == uncompressedSize ? uncompressed : Arrays.copyOf(uncompressed, length);
+    }
+    finally {
+      inflater.end();
+    }
+  }
+
+  private static String getHeader(byte[] manifest) throws IOException {
+    return getHeader(new Manifest(new ByteArrayInputStream(manifest)));
+  }
+
+  private static String getHeader(Manifest manifest) {
+    final String header = manifest == null ? null : manifest.getMainAttributes().getValue(Attributes.Name.CLASS_PATH);
+    return header == null ? "" : header;
+  }
+
+  private static String readHeaderWithJarFile(File file) throws IOException {
+    try (JarFile jarFile = new JarFile(file, false)) {
+      return getHeader(jarFile.getManifest());
+    }
+  }
+
+  /**
+   * The files referenced by a jar with the given attributes.
+   */
+  private static class ClassPath {
+
+    private final LibraryFile jar;
+    private final List<File>  files;
+
+    ClassPath(LibraryFile jar, List<File> files) {
+      this.jar = jar;
+      this.files = Collections.unmodifiableList(files);
+    }
+  }
+}
@@ -0,0 +1,155 @@
+
+package ch.arktos.dcc;
+
+import java.io.File;
+import java.util.List;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+
+/**
+ * Resolves the libraries matched by the configuration edited in the {@link DynamicClasspathContainerPage} in the
+ * background, so that the page can preview them while the configuration is typed. Every change reschedules the job
+ * with a delay and cancels a running preview, so a burst of keystrokes results in a single preview.
+ * <p>
+ * The listing of the library directories is kept between the previews. As long as the library directories, the depth
+ * and the exclude pattern stay the same and none of the listed directories has been modified, a changed pattern only
+ * filters the kept listing again instead of reading the disk.
+ */
+public class MatchPreviewJob extends Job {
+
+  private final Listener       listener;
+  private volatile Request     request;
+
+  // only accessed by the job, which never runs concurrently with itself
+  private LibraryScan          scan;
+  private DirectoryFingerprint fingerprint;
+
+  /**
+   * Instantiates a new match preview job.
+   *
+   * @param listener
+   *          receives the previews
+   */
+  public MatchPreviewJob(Listener listener) {
+    super(Messages.PreviewJobName);
+    this.listener = listener;
+    setPriority(SHORT);
+    setSystem(true);
+  }
+
+  /**
+   * Previews a configuration after a delay, canceling the preview of the previous configuration.
+   *
+   * @param request
+   *          the configuration to preview
+   * @param delay
+   *          the delay in milliseconds
+   */
+  public void preview(Request request, long delay) {
+    this.request = request;
+    cancel();
+    schedule(delay);
+  }
+
+  @Override
+  protected IStatus run(final IProgressMonitor monitor) {
+    final Request current = request;
+    if (current == null) {
+      return Status.OK_STATUS;
+    }
+
+    final List<File> libRoots = DynamicClasspathContainer.getLibraryRoots(current.projectName, current.libDir);
+    if (libRoots == null) {
+      listener.previewed(current, null);
+      return Status.OK_STATUS;
+    }
+
+    if (!isScanReusable(current, libRoots)) {
+      final LibraryScan newScan = LibraryScan.scan(libRoots, current.scanDepth, current.excludeRegex, new LibraryScan.Progress() {
+
+        @Override
+        public void scanning(File dir) {
+          // the preview has no progress to report
+        }
+
+        @Override
+        public boolean isCanceled() {
+          return monitor.isCanceled();
+        }
+      });
+      if (monitor.isCanceled()) {
+        // an incomplete listing is not kept
+        return Status.CANCEL_STATUS;
+      }
+      scan = newScan;
+      fingerprint = DirectoryFingerprint.of(newScan);
+    }
+
+    final List<ResolvedLibrary> libraries = current.resolver.resolve(scan);
+    if (monitor.isCanceled() || request != current) {
+      return Status.CANCEL_STATUS;
+    }
+    listener.previewed(current, libraries);
+    return Status.OK_STATUS;
+  }
+
+  private boolean isScanReusable(Request current, List<File> libRoots) {
+    return scan != null && scan.getRoots().equals(libRoots) && scan.getMaxDepth() == current.scanDepth && scan.getExcludeRegex().equals(current.excludeRegex)
+        && fingerprint.isCurrent();
+  }
+
+  /**
+   * A configuration to preview.
+   */
+  public static class Request {
+
+    private final String          projectName;
+    private final String          libDir;
+    private final int             scanDepth;
+    private final String          excludeRegex;
+    private final LibraryResolver resolver;
+
+    /**
+     * Instantiates a new request.
+     *
+     * @param projectName
+     *          the name of the project
+     * @param libDir
+     *          the library directory segment, i.e. the library directories
+     * @param scanDepth
+     *          the depth of the deepest subdirectories to list
+     * @param excludeRegex
+     *          regular expression for the names of the subdirectories not to list, may be empty
+     * @param resolver
+     *          the resolver selecting the libraries and their attachments from the listing
+     */
+    public Request(String projectName, String libDir, int scanDepth, String excludeRegex, LibraryResolver resolver) {
+      this.projectName = projectName;
+      this.libDir = libDir;
+      this.scanDepth = scanDepth;
+      this.excludeRegex = excludeRegex;
+      this.resolver = resolver;
+    }
+  }
+
+  /**
+   * Receives the previews. It is called in the thread of the job.
+   */
+  public interface Listener {
+
+    /**
+     * Called with the libraries matched by a configuration.
+     *
+     * @param request
+     *          the previewed configuration
+     * @param libraries
+     *          the matched libraries with their attachments, sorted by their paths, or <code>null</code> if none of
+     *          the library directories is available
+     */
+    void previewed(Request request, List<ResolvedLibrary> libraries);
+  }
+}
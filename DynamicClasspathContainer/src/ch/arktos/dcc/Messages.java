@@ -51,14 +51,56 @@ public class Messages extends NLS {
 
 	public static String IsExportedLabel;
 
+	public static String RecursiveLabel;
+
+	public static String MaxDepthLabel;
+
+	public static String MaxDepthErr;
+
+	public static String ExcludeRegexLabel;
+
+	public static String ExcludeRegexErr;
+
+	public static String CollapseLabel;
+
+	public static String PinsLabel;
+
 	public static String InvalidContainer;
 
+	public static String CollapsedDesc;
+
+	public static String TruncatedDesc;
+
 	public static String PageDesc;
 
 	public static String PageName;
 
 	public static String PageTitle;
 
+	public static String UpdateJobName;
+
+	public static String ResolveJobName;
+
+	public static String IndexJobName;
+
+	public static String AttachmentJobName;
+
+	public static String PreviewJobName;
+
+	public static String PreviewLabel;
+
+	public static String PreviewLibraryColumn;
+
+	public static String PreviewSourceColumn;
+
+	public static String PreviewJavadocColumn;
+
+	public static String PreviewPending;
+
+	public static String PreviewStatus;
+
+	public static String PreviewNoLibDir;
+
 	static {
 		// initialize resource bundle
 		NLS.initializeMessages(BUNDLE_NAME, Messages.class);
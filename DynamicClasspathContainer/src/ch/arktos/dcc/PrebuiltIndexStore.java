@@ -0,0 +1,277 @@
+
+package ch.arktos.dcc;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.jdt.core.index.JavaIndexer;
+
+
+/**
+ * Stores prebuilt JDT indexes of the libraries, which are attached to the classpath entries with the
+ * <code>index_location</code> attribute, so that JDT reads them instead of indexing the libraries itself.
+ * <p>
+ * The indexes are stored content-addressed by the SHA-1 hash of the library, so a library copied into several
+ * projects or workspaces is indexed only once, provided the workspaces are configured with the same index directory.
+ * The hashes are remembered per workspace together with the size and modification time of the library, so a library
+ * is read again only after it changed.
+ * <p>
+ * Resolving a container never waits for an index: a library without a known index is attached without one and queued
+ * for the {@link IndexGenerationJob}, which refreshes the published containers once new indexes are available.
+ */
+public class PrebuiltIndexStore {
+
+  /** The system property naming the index directory. Prebuilt indexes are only used if it is set. */
+  public final static String                       INDEX_DIRECTORY_PROPERTY = "ch.arktos.dcc.indexDirectory";
+
+  private static final int                         MAGIC                    = 0x44434349;
+  private static final int                         VERSION                  = 1;
+  private static final String                      INDEX_SUFFIX             = ".index";
+  private static final long                        GENERATION_DELAY         = 2000;
+
+  private final File                               directory;
+  private final File                               hashFile;
+  private final ConcurrentMap<LibraryFile, String> hashes                   = new ConcurrentHashMap<LibraryFile, String>();
+  private final Set<String>                        indexed                  = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+  private final Set<LibraryFile>                   pending                  = Collections.newSetFromMap(new ConcurrentHashMap<LibraryFile, Boolean>());
+  private final Set<LibraryFile>                   failed                   = Collections.newSetFromMap(new ConcurrentHashMap<LibraryFile, Boolean>());
+  private final IndexGenerationJob                 job;
+
+  /**
+   * Instantiates a new prebuilt index store.
+   *
+   * @param directory
+   *          the directory the indexes are stored in, created on demand
+   * @param hashFile
+   *          the file the hashes of the libraries are remembered in
+   * @param listener
+   *          the listener tracking the containers to refresh once new indexes are available
+   */
+  public PrebuiltIndexStore(File directory, File hashFile, LibraryChangeListener listener) {
+    this.directory = directory;
+    this.hashFile = hashFile;
+    this.job = new IndexGenerationJob(this, listener);
+    loadHashes();
+  }
+
+  /**
+   * Creates the store of the index directory configured by the {@link #INDEX_DIRECTORY_PROPERTY}.
+   *
+   * @param hashFile
+   *          the file the hashes of the libraries are remembered in
+   * @param listener
+   *          the listener tracking the containers to refresh once new indexes are available
+   * @return the store or <code>null</code> if no index directory is configured
+   */
+  public static PrebuiltIndexStore create(File hashFile, LibraryChangeListener listener) {
+    final String directory = System.getProperty(INDEX_DIRECTORY_PROPERTY);
+    if (directory == null || directory.trim().isEmpty()) {
+      return null;
+    }
+    return new PrebuiltIndexStore(new File(directory.trim()), hashFile, listener);
+  }
+
+  /**
+   * Returns the location of the prebuilt index of a library. If the index is not known yet, the library is queued for
+   * the index generation.
+   *
+   * @param library
+   *          the library
+   * @return the URL of the index or <code>null</code> if none is available (yet)
+   */
+  public String getIndexLocation(LibraryFile library) {
+    if (library.isDirectory() || failed.contains(library)) {
+      return null;
+    }
+
+    final String hash = hashes.get(library);
+    if (hash != null) {
+      final File index = getIndexFile(hash);
+      if (indexed.contains(hash) || index.isFile() && indexed.add(hash)) {
+        return index.toURI().toString();
+      }
+    }
+    if (pending.add(library)) {
+      job.schedule(GENERATION_DELAY);
+    }
+    return null;
+  }
+
+  /**
+   * Generates the indexes of the queued libraries which are not in the index directory yet.
+   *
+   * @param monitor
+   *          the progress monitor, the generation stops between two libraries if it is canceled
+   * @return the number of libraries an index became available for
+   * @throws OperationCanceledException
+   *           if the generation has been canceled
+   */
+  public int generatePending(IProgressMonitor monitor) {
+    final List<LibraryFile> libraries = new ArrayList<LibraryFile>(pending);
+    final SubMonitor progress = SubMonitor.convert(monitor, libraries.size());
+    int available = 0;
+    for (LibraryFile library : libraries) {
+      if (progress.isCanceled()) {
+        throw new OperationCanceledException();
+      }
+      progress.subTask(library.getName());
+      try {
+        if (generate(library)) {
+          available++;
+        }
+      }
+      catch (IOException e) {
+        // an unreadable library is attached without index instead of being retried on every resolution
+        failed.add(library);
+      }
+      pending.remove(library);
+      progress.worked(1);
+    }
+    return available;
+  }
+
+  private boolean generate(LibraryFile library) throws IOException {
+    String hash = hashes.get(library);
+    if (hash == null) {
+      hash = computeHash(library.getFile());
+      if (!library.equals(LibraryFile.read(library.getFile()))) {
+        // changed while being read, the update of the container queues it again
+        return false;
+      }
+      hashes.put(library, hash);
+    }
+
+    final File index = getIndexFile(hash);
+    if (!index.isFile()) {
+      if (!directory.isDirectory() && !directory.mkdirs()) {
+        throw new IOException("Cannot create " + directory);
+      }
+
+      // other workspaces may generate the same index concurrently, the content is the same
+      final File tmpFile = new File(directory, hash + "." + UUID.randomUUID() + ".tmp");
+      try {
+        JavaIndexer.generateIndexForJar(library.getFile().getAbsolutePath(), tmpFile.getAbsolutePath());
+        Files.move(tmpFile.toPath(), index.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+      finally {
+        Files.deleteIfExists(tmpFile.toPath());
+      }
+    }
+    indexed.add(hash);
+    return true;
+  }
+
+  /**
+   * Persists the hashes of the libraries which still exist unchanged.
+   *
+   * @throws IOException
+   *           if the hashes cannot be written
+   */
+  public void saveHashes() throws IOException {
+    final File parent = hashFile.getParentFile();
+    if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+      throw new IOException("Cannot create " + parent);
+    }
+
+    final List<Map.Entry<LibraryFile, String>> current = new ArrayList<Map.Entry<LibraryFile, String>>();
+    for (Map.Entry<LibraryFile, String> entry : hashes.entrySet()) {
+      if (entry.getKey().equals(LibraryFile.read(entry.getKey().getFile()))) {
+        current.add(entry);
+      }
+    }
+
+    final File tmpFile = new File(hashFile.getPath() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(current.size());
+      for (Map.Entry<LibraryFile, String> entry : current) {
+        out.writeUTF(entry.getKey().getFile().getPath());
+        out.writeLong(entry.getKey().getSize());
+        out.writeLong(entry.getKey().getLastModified());
+        out.writeUTF(entry.getValue());
+      }
+    }
+    Files.move(tmpFile.toPath(), hashFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /**
+   * Stops the index generation.
+   */
+  public void dispose() {
+    job.cancel();
+  }
+
+  private void loadHashes() {
+    if (!hashFile.isFile()) {
+      return;
+    }
+
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(hashFile)))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        return;
+      }
+      final int size = in.readInt();
+      for (int i = 0; i < size; i++) {
+        final File file = new File(in.readUTF());
+        final long length = in.readLong();
+        final long lastModified = in.readLong();
+        hashes.put(new LibraryFile(file, false, length, lastModified), in.readUTF());
+      }
+    }
+    catch (IOException e) {
+      // the hashes are computed again
+      hashes.clear();
+    }
+  }
+
+  private File getIndexFile(String hash) {
+    return new File(directory, hash + INDEX_SUFFIX);
+  }
+
+  private static String computeHash(File file) throws IOException {
+    final MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-1");
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new IOException(e);
+    }
+
+    final byte[] buffer = new byte[65536];
+    try (InputStream in = new FileInputStream(file)) {
+      int read;
+      while ((read = in.read(buffer)) >= 0) {
+        digest.update(buffer, 0, read);
+      }
+    }
+
+    final StringBuilder hash = new StringBuilder();
+    for (byte b : digest.digest()) {
+      hash.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return hash.toString();
+  }
+}
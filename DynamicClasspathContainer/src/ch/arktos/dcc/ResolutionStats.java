@@ -0,0 +1,200 @@
+
+package ch.arktos.dcc;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * Counts and times the phases of resolving and publishing the containers while the resolution is traced, see the
+ * <code>.options</code> of the plug-in. While the statistics are disabled, recording a phase or an event only reads a
+ * volatile flag.
+ * <p>
+ * The statistics are summed over all containers of the session and kept in memory, so they can be queried at any
+ * time, e.g. from a debugger, and are traced when the plug-in stops. Like the resolution itself they do not depend on
+ * the Eclipse runtime.
+ */
+public class ResolutionStats {
+
+  /**
+   * The timed phases.
+   */
+  public enum Phase {
+
+    /** Listing the library directories. */
+    LISTING,
+
+    /** Selecting the libraries with the library filter, including the lookup of their attachments. */
+    FILTERING,
+
+    /** Indexing the attachments of the library directories. */
+    ATTACHMENTS,
+
+    /** Creating the classpath entries of the libraries. */
+    ENTRIES,
+
+    /** Setting the containers in the Java model. */
+    PUBLICATION
+  }
+
+  /**
+   * The counted events.
+   */
+  public enum Counter {
+
+    /** Files accepted by the library filter. */
+    MATCHED,
+
+    /** Files rejected by the library filter. */
+    REJECTED,
+
+    /** Entries served from a current snapshot, either the one of the container or a shared one. */
+    CACHE_HITS,
+
+    /** Entries resolved from disk because no current snapshot was available. */
+    CACHE_MISSES,
+
+    /** Containers set in the Java model for the first time. */
+    PUBLISHED,
+
+    /** Containers set again in the Java model, because their entries changed. */
+    REPUBLISHED,
+
+    /** Containers not set again, because their entries did not change. */
+    SUPPRESSED,
+
+    /** Library changes folded into the batched updates of the containers. */
+    FOLDED_CHANGES,
+
+    /** Batched updates of the containers, each applying one or more folded changes. */
+    BATCHED_UPDATES
+  }
+
+  private static final long            NOT_TIMED = Long.MIN_VALUE;
+
+  private static final AtomicLongArray COUNTS    = new AtomicLongArray(Counter.values().length);
+  private static final AtomicLongArray RUNS      = new AtomicLongArray(Phase.values().length);
+  private static final AtomicLongArray TIMES     = new AtomicLongArray(Phase.values().length);
+
+  private static volatile boolean      enabled;
+
+  /**
+   * Checks whether the statistics are recorded.
+   *
+   * @return true, if the resolution is traced
+   */
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Starts or stops recording the statistics. The statistics recorded so far are kept.
+   *
+   * @param enabled
+   *          whether the statistics are recorded
+   */
+  public static void setEnabled(boolean enabled) {
+    ResolutionStats.enabled = enabled;
+  }
+
+  /**
+   * Starts timing a phase.
+   *
+   * @return the start time to pass to {@link #stop(Phase, long)}
+   */
+  public static long start() {
+    return enabled ? System.nanoTime() : NOT_TIMED;
+  }
+
+  /**
+   * Records a run of a phase.
+   *
+   * @param phase
+   *          the phase
+   * @param start
+   *          the time returned by {@link #start()}
+   * @return the duration of the run in nanoseconds, or -1 if the statistics are disabled
+   */
+  public static long stop(Phase phase, long start) {
+    if (start == NOT_TIMED || !enabled) {
+      return -1;
+    }
+    final long duration = System.nanoTime() - start;
+    RUNS.incrementAndGet(phase.ordinal());
+    TIMES.addAndGet(phase.ordinal(), duration);
+    return duration;
+  }
+
+  /**
+   * Counts an event.
+   *
+   * @param counter
+   *          the counter of the event
+   */
+  public static void count(Counter counter) {
+    count(counter, 1);
+  }
+
+  /**
+   * Counts several events at once.
+   *
+   * @param counter
+   *          the counter of the events
+   * @param events
+   *          the number of events
+   */
+  public static void count(Counter counter, long events) {
+    if (enabled && events != 0) {
+      COUNTS.addAndGet(counter.ordinal(), events);
+    }
+  }
+
+  public static long getCount(Counter counter) {
+    return COUNTS.get(counter.ordinal());
+  }
+
+  public static long getRuns(Phase phase) {
+    return RUNS.get(phase.ordinal());
+  }
+
+  /**
+   * Returns the total time spent in a phase.
+   *
+   * @param phase
+   *          the phase
+   * @return the time in nanoseconds
+   */
+  public static long getTime(Phase phase) {
+    return TIMES.get(phase.ordinal());
+  }
+
+  /**
+   * Clears the statistics recorded so far.
+   */
+  public static void reset() {
+    for (int i = 0; i < COUNTS.length(); i++) {
+      COUNTS.set(i, 0);
+    }
+    for (int i = 0; i < RUNS.length(); i++) {
+      RUNS.set(i, 0);
+      TIMES.set(i, 0);
+    }
+  }
+
+  /**
+   * Formats the statistics recorded so far, one phase or counter per line.
+   *
+   * @return the statistics
+   */
+  public static String format() {
+    final StringBuilder stats = new StringBuilder();
+    for (Phase phase : Phase.values()) {
+      stats.append(phase.name().toLowerCase(Locale.ENGLISH)).append(": ").append(getRuns(phase)).append(" runs, ");
+      stats.append(getTime(phase) / 1000000).append(" ms\n");
+    }
+    for (Counter counter : Counter.values()) {
+      stats.append(counter.name().toLowerCase(Locale.ENGLISH)).append(": ").append(getCount(counter)).append('\n');
+    }
+    return stats.toString();
+  }
+}
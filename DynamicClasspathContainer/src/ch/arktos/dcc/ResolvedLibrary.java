@@ -0,0 +1,67 @@
+
+package ch.arktos.dcc;
+
+
+/**
+ * A library of a container together with its source and javadoc attachments.
+ */
+public class ResolvedLibrary {
+
+  private final LibraryFile library;
+  private final LibraryFile source;
+  private final LibraryFile javadoc;
+
+  /**
+   * Instantiates a new resolved library.
+   * 
+   * @param library
+   *          the library file
+   * @param source
+   *          the source attachment or <code>null</code>
+   * @param javadoc
+   *          the javadoc attachment or <code>null</code>
+   */
+  public ResolvedLibrary(LibraryFile library, LibraryFile source, LibraryFile javadoc) {
+    this.library = library;
+    this.source = source;
+    this.javadoc = javadoc;
+  }
+
+  public LibraryFile getLibrary() {
+    return library;
+  }
+
+  public LibraryFile getSource() {
+    return source;
+  }
+
+  public LibraryFile getJavadoc() {
+    return javadoc;
+  }
+
+  @Override
+  public int hashCode() {
+    return library.hashCode() ^ (source == null ? 0 : source.hashCode()) ^ (javadoc == null ? 0 : 31 * javadoc.hashCode());
+  }
+
+  /**
+   * Two resolved libraries are equal if the library and both attachments are unchanged.
+   */
+  @Override
+  public boolean equals(Object obj) {
+    if (!(obj instanceof ResolvedLibrary)) {
+      return false;
+    }
+    final ResolvedLibrary other = (ResolvedLibrary)obj;
+    return library.equals(other.library) && equals(source, other.source) && equals(javadoc, other.javadoc);
+  }
+
+  private static boolean equals(LibraryFile a, LibraryFile b) {
+    return a == null ? b == null : a.equals(b);
+  }
+
+  @Override
+  public String toString() {
+    return library.toString();
+  }
+}
@@ -0,0 +1,92 @@
+
+package ch.arktos.dcc;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * Shares the resolved snapshots between containers of different projects that collect the same library directory
+ * with the same configuration, so that the directory is scanned once and the entries are created once. An entry of
+ * the cache lives as long as at least one published container refers to it.
+ */
+public class SharedSnapshotCache {
+
+  private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+  /**
+   * Registers a referrer of a shared snapshot.
+   * 
+   * @param key
+   *          the sharing key of the container
+   * @param referrer
+   *          identifies the project and container referring to the snapshot
+   */
+  public synchronized void acquire(String key, String referrer) {
+    Entry entry = entries.get(key);
+    if (entry == null) {
+      entry = new Entry();
+      entries.put(key, entry);
+    }
+    entry.referrers.add(referrer);
+  }
+
+  /**
+   * Unregisters a referrer of a shared snapshot. The snapshot is evicted once the last referrer is gone.
+   * 
+   * @param key
+   *          the sharing key of the container
+   * @param referrer
+   *          identifies the project and container referring to the snapshot
+   */
+  public synchronized void release(String key, String referrer) {
+    final Entry entry = entries.get(key);
+    if (entry != null && entry.referrers.remove(referrer) && entry.referrers.isEmpty()) {
+      entries.remove(key);
+    }
+  }
+
+  /**
+   * Returns the shared snapshot.
+   * 
+   * @param key
+   *          the sharing key of the container
+   * @return the last snapshot resolved by any of the referrers, or <code>null</code> if there is none
+   */
+  public synchronized ContainerSnapshot get(String key) {
+    final Entry entry = entries.get(key);
+    return entry == null ? null : entry.snapshot;
+  }
+
+  /**
+   * Shares a snapshot with the other referrers. Snapshots of containers that are not referred to are not kept.
+   * 
+   * @param key
+   *          the sharing key of the container
+   * @param snapshot
+   *          the resolved snapshot
+   */
+  public synchronized void put(String key, ContainerSnapshot snapshot) {
+    final Entry entry = entries.get(key);
+    if (entry != null) {
+      entry.snapshot = snapshot;
+    }
+  }
+
+  /**
+   * Returns the number of shared snapshots.
+   * 
+   * @return the number of distinct library directories and configurations in use
+   */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  private static class Entry {
+
+    private final Set<String> referrers = new HashSet<String>();
+    private ContainerSnapshot snapshot;
+  }
+}
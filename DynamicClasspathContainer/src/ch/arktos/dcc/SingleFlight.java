@@ -0,0 +1,107 @@
+package ch.arktos.dcc;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Runs a computation once for all callers requesting it concurrently under the same key. The first caller runs the
+ * computation on its own thread, callers arriving while it is running wait for its result instead of running it again,
+ * and callers arriving after it finished run it anew. Like the resolution it is used for, it does not depend on the
+ * Eclipse runtime.
+ * 
+ * @param <K>
+ *          the type of the keys
+ * @param <V>
+ *          the type of the results
+ */
+public class SingleFlight<K, V> {
+
+  private final ConcurrentMap<K, Flight<V>> flights = new ConcurrentHashMap<K, Flight<V>>();
+
+  /**
+   * Runs a computation, unless one with the same key is already running, in which case its result is awaited. An
+   * interrupt does not abort the wait, as the caller has nothing to return without the result, but it is preserved.
+   * 
+   * @param key
+   *          the key identifying the computation
+   * @param computation
+   *          the computation
+   * @return the result of the computation run by this or a concurrent caller
+   * @throws RuntimeException
+   *           the exception thrown by the computation, which is thrown to all callers sharing it
+   */
+  public V run(K key, Callable<V> computation) {
+    final Flight<V> flight = new Flight<V>(computation);
+    final Flight<V> running = flights.putIfAbsent(key, flight);
+    if (running != null) {
+      running.callers.incrementAndGet();
+      return getResult(running.task);
+    }
+
+    try {
+      flight.task.run();
+    }
+    finally {
+      flights.remove(key, flight);
+    }
+    return getResult(flight.task);
+  }
+
+  /**
+   * Returns how many callers share the running computation of a key, including the one running it.
+   * 
+   * @param key
+   *          the key identifying the computation
+   * @return the number of callers, 0 if no computation is running
+   */
+  public int getCallers(K key) {
+    final Flight<V> running = flights.get(key);
+    return running == null ? 0 : running.callers.get();
+  }
+
+  private static <V> V getResult(FutureTask<V> task) {
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          return task.get();
+        }
+        catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+    }
+    catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException)e.getCause();
+      }
+      if (e.getCause() instanceof Error) {
+        throw (Error)e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    }
+    finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * A running computation and the number of its callers.
+   */
+  private static class Flight<V> {
+
+    private final FutureTask<V> task;
+    private final AtomicInteger callers = new AtomicInteger(1);
+
+    Flight(Callable<V> computation) {
+      this.task = new FutureTask<V>(computation);
+    }
+  }
+}
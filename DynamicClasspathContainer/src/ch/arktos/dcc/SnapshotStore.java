@@ -0,0 +1,93 @@
+
+package ch.arktos.dcc;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+
+
+/**
+ * Persists the scans containers have been resolved from, so that a container can be restored after a restart without
+ * scanning its library directory again. The scan carries the attributes of the scanned directories, which are
+ * validated with a {@link DirectoryFingerprint} before a restored scan is used.
+ */
+public class SnapshotStore {
+
+  private static final int MAGIC   = 0x44434353;
+  private static final int VERSION = 3;
+
+  private final File       directory;
+
+  /**
+   * Instantiates a new snapshot store.
+   * 
+   * @param directory
+   *          the directory the snapshots are stored in, created on demand
+   */
+  public SnapshotStore(File directory) {
+    this.directory = directory;
+  }
+
+  /**
+   * Stores the scan of a container, replacing a previously stored one.
+   * 
+   * @param key
+   *          the key identifying the container
+   * @param scan
+   *          the scan
+   * @throws IOException
+   *           if the scan cannot be written
+   */
+  public void save(String key, LibraryScan scan) throws IOException {
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Cannot create " + directory);
+    }
+
+    final File file = getFile(key);
+    final File tmpFile = new File(directory, file.getName() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeUTF(key);
+      scan.write(out);
+    }
+    Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /**
+   * Loads the scan stored for a container.
+   * 
+   * @param key
+   *          the key identifying the container
+   * @return the scan or <code>null</code> if none is stored or it cannot be read
+   */
+  public LibraryScan load(String key) {
+    final File file = getFile(key);
+    if (!file.isFile()) {
+      return null;
+    }
+
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(key)) {
+        return null;
+      }
+      return LibraryScan.read(in);
+    }
+    catch (IOException e) {
+      return null;
+    }
+  }
+
+  private File getFile(String key) {
+    return new File(directory, UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8)).toString() + ".snapshot");
+  }
+}
@@ -0,0 +1,273 @@
+
+package ch.arktos.dcc;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * Collapses several versions of the same artifact to a single library. The artifact name and the version are parsed
+ * from the library file name: the version starts at the first <code>-</code> followed by a digit, or at the first
+ * <code>_</code> followed by a digit if there is none, e.g. <code>commons-lang3-3.12.0.jar</code> is version
+ * <code>3.12.0</code> of <code>commons-lang3</code> and <code>cats-core_2.13-2.9.0.jar</code> is version
+ * <code>2.9.0</code> of <code>cats-core_2.13</code>. Libraries without a version are never collapsed.
+ * <p>
+ * Of the versions of an artifact, the newest one is kept, unless the pin list names some of them, in which case
+ * exactly the pinned versions are kept. A pin is the file name of a library, with or without its extension. Of equal
+ * versions, e.g. <code>foo-1.0.jar</code> and <code>foo_1.0.jar</code> or the same file in two directories, the one
+ * with the smallest path is kept.
+ * <p>
+ * Versions are compared part by part, splitting at <code>.</code>, <code>-</code> and <code>_</code>. Numeric parts
+ * are compared numerically and are newer than qualifiers, which are compared alphabetically. A release is newer than
+ * its qualified versions, e.g. <code>1.2 &gt; 1.2-beta</code>, but older than its numeric successors, e.g.
+ * <code>1.2 &lt; 1.2.1</code>.
+ */
+public class VersionPolicy {
+
+  /** The prefix identifying the container path segment configuring the policy. */
+  public final static String SEGMENT_PREFIX = "versions=";
+
+  /** The separator of the pins in the pin list. */
+  public final static String PIN_SEPARATOR  = ",";
+
+  private final Set<String>  pins;
+
+  /**
+   * Instantiates a new version policy.
+   *
+   * @param pins
+   *          the pinned library file names, with or without extension
+   */
+  public VersionPolicy(Collection<String> pins) {
+    this.pins = Collections.unmodifiableSet(new LinkedHashSet<String>(pins));
+  }
+
+  /**
+   * Parses the policy from a container path segment.
+   *
+   * @param segment
+   *          the decoded segment
+   * @return the policy or <code>null</code> if the segment does not configure a version policy
+   */
+  public static VersionPolicy parse(String segment) {
+    if (segment == null || !segment.startsWith(SEGMENT_PREFIX)) {
+      return null;
+    }
+    return new VersionPolicy(getPins(segment.substring(SEGMENT_PREFIX.length())));
+  }
+
+  /**
+   * Splits a pin list.
+   *
+   * @param pinList
+   *          the pins separated by {@link #PIN_SEPARATOR}
+   * @return the trimmed, non-empty pins
+   */
+  public static List<String> getPins(String pinList) {
+    final List<String> pins = new ArrayList<String>();
+    for (String pin : pinList.split(PIN_SEPARATOR)) {
+      if (!pin.trim().isEmpty()) {
+        pins.add(pin.trim());
+      }
+    }
+    return pins;
+  }
+
+  /**
+   * Returns the container path segment configuring this policy.
+   *
+   * @return the segment, not yet encoded
+   */
+  public String toSegment() {
+    final StringBuilder segment = new StringBuilder(SEGMENT_PREFIX);
+    for (String pin : pins) {
+      if (segment.length() > SEGMENT_PREFIX.length()) {
+        segment.append(PIN_SEPARATOR);
+      }
+      segment.append(pin);
+    }
+    return segment.toString();
+  }
+
+  public Set<String> getPins() {
+    return pins;
+  }
+
+  /**
+   * Collapses the versions of the same artifacts.
+   *
+   * @param libraries
+   *          the resolved libraries
+   * @param collapsed
+   *          receives the libraries which are dropped, may be <code>null</code>
+   * @return the kept libraries in their original order
+   */
+  public List<ResolvedLibrary> collapse(List<ResolvedLibrary> libraries, List<ResolvedLibrary> collapsed) {
+    final Map<String, List<ResolvedLibrary>> artifacts = new LinkedHashMap<String, List<ResolvedLibrary>>();
+    for (ResolvedLibrary library : libraries) {
+      final String[] artifact = parseName(library.getLibrary().getName());
+      if (artifact != null) {
+        List<ResolvedLibrary> versions = artifacts.get(artifact[0]);
+        if (versions == null) {
+          versions = new ArrayList<ResolvedLibrary>(1);
+          artifacts.put(artifact[0], versions);
+        }
+        versions.add(library);
+      }
+    }
+
+    final Set<ResolvedLibrary> dropped = new LinkedHashSet<ResolvedLibrary>();
+    for (List<ResolvedLibrary> versions : artifacts.values()) {
+      if (versions.size() > 1) {
+        final List<ResolvedLibrary> kept = getKept(versions);
+        for (ResolvedLibrary version : versions) {
+          if (!kept.contains(version)) {
+            dropped.add(version);
+          }
+        }
+      }
+    }
+    if (dropped.isEmpty()) {
+      return libraries;
+    }
+
+    final List<ResolvedLibrary> result = new ArrayList<ResolvedLibrary>(libraries.size() - dropped.size());
+    for (ResolvedLibrary library : libraries) {
+      if (!dropped.contains(library)) {
+        result.add(library);
+      }
+    }
+    if (collapsed != null) {
+      collapsed.addAll(dropped);
+    }
+    return result;
+  }
+
+  private List<ResolvedLibrary> getKept(List<ResolvedLibrary> versions) {
+    final List<ResolvedLibrary> pinned = new ArrayList<ResolvedLibrary>();
+    for (ResolvedLibrary version : versions) {
+      final String name = version.getLibrary().getName();
+      final int extension = name.lastIndexOf('.');
+      if (pins.contains(name) || extension > 0 && pins.contains(name.substring(0, extension))) {
+        pinned.add(version);
+      }
+    }
+    if (!pinned.isEmpty()) {
+      return pinned;
+    }
+
+    ResolvedLibrary newest = versions.get(0);
+    for (ResolvedLibrary version : versions) {
+      final int result = compareVersions(parseName(version.getLibrary().getName())[1], parseName(newest.getLibrary().getName())[1]);
+      if (result > 0 || result == 0 && version.getLibrary().getFile().getPath().compareTo(newest.getLibrary().getFile().getPath()) < 0) {
+        newest = version;
+      }
+    }
+    return Collections.singletonList(newest);
+  }
+
+  /**
+   * Splits a library file name into artifact name and version.
+   *
+   * @param name
+   *          the file name
+   * @return the artifact name and the version, or <code>null</code> if the name does not contain a version
+   */
+  static String[] parseName(String name) {
+    final int extension = name.lastIndexOf('.');
+    final boolean hasExtension = extension > 0 && extension + 1 < name.length() && !Character.isDigit(name.charAt(extension + 1));
+    final String baseName = hasExtension ? name.substring(0, extension) : name;
+    final int start = getVersionStart(baseName, '-');
+    final int versionStart = start > 0 ? start : getVersionStart(baseName, '_');
+    return versionStart > 0 ? new String[] {baseName.substring(0, versionStart - 1), baseName.substring(versionStart)} : null;
+  }
+
+  private static int getVersionStart(String baseName, char separator) {
+    for (int i = 1; i < baseName.length() - 1; i++) {
+      if (baseName.charAt(i) == separator && Character.isDigit(baseName.charAt(i + 1))) {
+        return i + 1;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Compares two versions.
+   *
+   * @param version
+   *          the version
+   * @param other
+   *          the other version
+   * @return a negative number, zero or a positive number if the version is older, equal or newer than the other one
+   */
+  static int compareVersions(String version, String other) {
+    final String[] parts = version.split("[.\\-_]");
+    final String[] otherParts = other.split("[.\\-_]");
+    for (int i = 0; i < Math.max(parts.length, otherParts.length); i++) {
+      final String part = i < parts.length ? parts[i] : null;
+      final String otherPart = i < otherParts.length ? otherParts[i] : null;
+      final int result = compareParts(part, otherPart);
+      if (result != 0) {
+        return result;
+      }
+    }
+    return 0;
+  }
+
+  private static int compareParts(String part, String other) {
+    if (part == null || other == null) {
+      // a missing part is older than a number, but newer than a qualifier
+      final String present = part == null ? other : part;
+      final int sign = part == null ? -1 : 1;
+      return isNumeric(present) ? sign : -sign;
+    }
+
+    final boolean numeric = isNumeric(part);
+    final boolean otherNumeric = isNumeric(other);
+    if (numeric && otherNumeric) {
+      final String trimmed = trimLeadingZeros(part);
+      final String otherTrimmed = trimLeadingZeros(other);
+      return trimmed.length() != otherTrimmed.length() ? trimmed.length() - otherTrimmed.length() : trimmed.compareTo(otherTrimmed);
+    }
+    if (numeric != otherNumeric) {
+      return numeric ? 1 : -1;
+    }
+    return part.compareToIgnoreCase(other);
+  }
+
+  private static boolean isNumeric(String part) {
+    if (part.isEmpty()) {
+      return false;
+    }
+    for (int i = 0; i < part.length(); i++) {
+      if (!Character.isDigit(part.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static String trimLeadingZeros(String part) {
+    int start = 0;
+    while (start < part.length() - 1 && part.charAt(start) == '0') {
+      start++;
+    }
+    return part.substring(start);
+  }
+
+  @Override
+  public int hashCode() {
+    return pins.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return obj instanceof VersionPolicy && pins.equals(((VersionPolicy)obj).pins);
+  }
+}
@@ -0,0 +1,96 @@
+package ch.arktos.dcc;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * Shares one instance per key between all callers, as long as any of them references it. The keys are the absolute
+ * paths of the files the instances are created for, so that the files of different scans, which are equal but not the
+ * same objects, find the same instance. The instances are referenced weakly and their keys removed once they are
+ * collected. Like the resolution it is used for, it does not depend on the Eclipse runtime.
+ *
+ * @param <V>
+ *          the type of the instances
+ */
+public class WeakInterner<V> {
+
+  /**
+   * Creates the instance of a key not interned yet.
+   *
+   * @param <V>
+   *          the type of the instances
+   */
+  public interface Factory<V> {
+
+    /**
+     * Creates the instance of a key.
+     *
+     * @param key
+     *          the key
+     * @return the instance
+     */
+    V create(String key);
+  }
+
+  private final Map<String, Entry<V>> entries = new HashMap<String, Entry<V>>();
+  private final ReferenceQueue<V>     queue   = new ReferenceQueue<V>();
+
+  /**
+   * Returns the instance of a key, creating it if the key is not interned or its instance was collected.
+   *
+   * @param key
+   *          the key
+   * @param factory
+   *          the factory creating the instance
+   * @return the shared instance
+   */
+  public synchronized V intern(String key, Factory<V> factory) {
+    expunge();
+    final Entry<V> cached = entries.get(key);
+    V value = cached == null ? null : cached.get();
+    if (value == null) {
+      value = factory.create(key);
+      entries.put(key, new Entry<V>(key, value, queue));
+    }
+    return value;
+  }
+
+  /**
+   * Returns the number of interned keys whose instances were not collected yet.
+   *
+   * @return the number of keys
+   */
+  public synchronized int size() {
+    expunge();
+    return entries.size();
+  }
+
+  /**
+   * Removes the keys of the collected instances. A key interned again in the meantime maps to a new entry and is kept.
+   */
+  private void expunge() {
+    for (Reference<? extends V> ref = queue.poll(); ref != null; ref = queue.poll()) {
+      final Entry<?> entry = (Entry<?>)ref;
+      if (entries.get(entry.key) == entry) {
+        entries.remove(entry.key);
+      }
+    }
+  }
+
+  /**
+   * The weak reference to an instance, remembering its key.
+   */
+  private static class Entry<V> extends WeakReference<V> {
+
+    private final String key;
+
+    Entry(String key, V value, ReferenceQueue<V> queue) {
+      super(value, queue);
+      this.key = key;
+    }
+  }
+}